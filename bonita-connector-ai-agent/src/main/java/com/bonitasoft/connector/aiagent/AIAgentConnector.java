@@ -5,20 +5,27 @@ import org.bonitasoft.engine.connector.ConnectorException;
 import org.bonitasoft.engine.connector.ConnectorValidationException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * AI Agent Connector for Bonita
@@ -41,6 +48,12 @@ public class AIAgentConnector extends AbstractConnector {
     protected static final String INPUT_DATA = "inputData";
     protected static final String PARAMS = "params";
     protected static final String TIMEOUT_MS = "timeoutMs";
+    protected static final String MAX_CONNECTIONS = "maxConnections";
+    protected static final String MAX_CONNECTIONS_PER_ROUTE = "maxConnectionsPerRoute";
+    protected static final String IDLE_TIMEOUT_MS = "idleTimeoutMs";
+    protected static final String MODE = "mode";
+    protected static final String JOB_ID = "jobId";
+    protected static final String CALLBACK_URL = "callbackUrl";
 
     // Output parameters
     protected static final String STATUS = "status";
@@ -48,8 +61,16 @@ public class AIAgentConnector extends AbstractConnector {
     protected static final String USAGE = "usage";
     protected static final String ERROR = "error";
 
+    // Execution modes
+    protected static final String MODE_SYNC = "sync";
+    protected static final String MODE_ASYNC = "async";
+    protected static final String MODE_POLL = "poll";
+
     // Default values
     private static final int DEFAULT_TIMEOUT_MS = 30000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int DEFAULT_IDLE_TIMEOUT_MS = 60000;
     private static final String DEFAULT_TASK = "rag_qa";
 
     @Override
@@ -64,13 +85,38 @@ public class AIAgentConnector extends AbstractConnector {
             errors.add("Agent URL must start with http:// or https://");
         }
 
+        String mode = mode();
+        if (!List.of(MODE_SYNC, MODE_ASYNC, MODE_POLL).contains(mode)) {
+            errors.add("Mode must be one of sync, async or poll");
+        }
+
+        // Polling only needs the job id; the other modes send input data
+        String jobId = (String) getInputParameter(JOB_ID);
         String inputData = (String) getInputParameter(INPUT_DATA);
-        if (inputData == null || inputData.trim().isEmpty()) {
+        if (MODE_POLL.equals(mode)) {
+            if (jobId == null || jobId.trim().isEmpty()) {
+                errors.add("Job id is required in poll mode");
+            }
+        } else if (inputData == null || inputData.trim().isEmpty()) {
             errors.add("Input data is required");
         } else {
             // Validate JSON format
             try {
-                OBJECT_MAPPER.readTree(inputData);
+                JsonNode input = OBJECT_MAPPER.readTree(inputData);
+                if (input.isArray() && MODE_ASYNC.equals(mode)) {
+                    errors.add("Input data must be a single JSON object in async mode");
+                } else if (input.isArray()) {
+                    // Batch mode: one input object per request
+                    if (input.isEmpty()) {
+                        errors.add("Input data array must not be empty");
+                    }
+                    for (JsonNode item : input) {
+                        if (!item.isObject()) {
+                            errors.add("Input data array must only contain JSON objects");
+                            break;
+                        }
+                    }
+                }
             } catch (IOException e) {
                 errors.add("Input data must be valid JSON: " + e.getMessage());
             }
@@ -86,6 +132,19 @@ public class AIAgentConnector extends AbstractConnector {
             }
         }
 
+        String callbackUrl = (String) getInputParameter(CALLBACK_URL);
+        if (callbackUrl != null && !callbackUrl.trim().isEmpty()
+                && !callbackUrl.startsWith("http://") && !callbackUrl.startsWith("https://")) {
+            errors.add("Callback URL must start with http:// or https://");
+        }
+
+        for (String name : List.of(TIMEOUT_MS, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE, IDLE_TIMEOUT_MS)) {
+            Integer value = (Integer) getInputParameter(name);
+            if (value != null && value <= 0) {
+                errors.add(name + " must be a positive number");
+            }
+        }
+
         if (!errors.isEmpty()) {
             throw new ConnectorValidationException(this, errors);
         }
@@ -100,54 +159,157 @@ public class AIAgentConnector extends AbstractConnector {
         String params = (String) getInputParameter(PARAMS);
         Integer timeoutMs = getInputParameter(TIMEOUT_MS) != null ? 
             (Integer) getInputParameter(TIMEOUT_MS) : DEFAULT_TIMEOUT_MS;
+        int maxConnections = intInput(MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = intInput(MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        int idleTimeoutMs = intInput(IDLE_TIMEOUT_MS, DEFAULT_IDLE_TIMEOUT_MS);
+
+        // Shared pooled client; it is not closed, its connections are reused
+        CloseableHttpClient httpClient = AgentHttpClients.get(
+            agentUrl, maxConnections, maxConnectionsPerRoute, idleTimeoutMs);
 
-        LOGGER.info("Calling AI Agent at: {} with task: {}", agentUrl, task);
+        String mode = mode();
+        if (MODE_ASYNC.equals(mode) || MODE_POLL.equals(mode)) {
+            executeAsync(mode, agentUrl, authHeader, task, inputData, params, timeoutMs, httpClient);
+            return;
+        }
 
         try {
+            JsonNode input = OBJECT_MAPPER.readTree(inputData);
+            JsonNode paramsJson = params != null && !params.trim().isEmpty() ? OBJECT_MAPPER.readTree(params) : null;
+
+            // A JSON array of inputs is sent in one round trip to the batch endpoint of the agent
+            boolean batch = input.isArray();
+            String url = batch ? batchUrl(agentUrl) : agentUrl;
+            LOGGER.info("Calling AI Agent at: {} with task: {}{}", url, task,
+                batch ? " (batch of " + input.size() + ")" : "");
+
             // Build request payload
-            Map<String, Object> requestPayload = new HashMap<>();
-            requestPayload.put("task", task);
-            requestPayload.put("input", OBJECT_MAPPER.readTree(inputData));
-            
-            if (params != null && !params.trim().isEmpty()) {
-                requestPayload.put("params", OBJECT_MAPPER.readTree(params));
+            Object requestPayload;
+            if (batch) {
+                List<Map<String, Object>> requests = new java.util.ArrayList<>(input.size());
+                for (JsonNode item : input) {
+                    requests.add(requestPayload(task, item, paramsJson));
+                }
+                requestPayload = requests;
+            } else {
+                requestPayload = requestPayload(task, input, paramsJson);
             }
 
             String jsonPayload = OBJECT_MAPPER.writeValueAsString(requestPayload);
             LOGGER.debug("Request payload: {}", jsonPayload);
 
             // Execute HTTP request
-            try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                HttpPost httpPost = new HttpPost(agentUrl);
-                httpPost.setHeader("Content-Type", "application/json");
-                
-                if (authHeader != null && !authHeader.trim().isEmpty()) {
-                    httpPost.setHeader("Authorization", authHeader);
-                }
+            HttpPost httpPost = new HttpPost(url);
+            httpPost.setConfig(AgentHttpClients.requestConfig(timeoutMs));
+            httpPost.setHeader("Content-Type", "application/json");
 
-                httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
+            if (authHeader != null && !authHeader.trim().isEmpty()) {
+                httpPost.setHeader("Authorization", authHeader);
+            }
 
-                try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    
-                    LOGGER.debug("Response status: {}, body: {}", statusCode, responseBody);
+            httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
 
-                    if (statusCode >= 200 && statusCode < 300) {
-                        // Parse successful response
-                        JsonNode responseJson = OBJECT_MAPPER.readTree(responseBody);
-                        parseAndSetOutputs(responseJson);
+            ScheduledFuture<?> deadline = AgentHttpClients.abortAfter(httpPost, timeoutMs);
+            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                
+                LOGGER.debug("Response status: {}, body: {}", statusCode, responseBody);
+
+                if (statusCode >= 200 && statusCode < 300) {
+                    // Parse successful response
+                    JsonNode responseJson = OBJECT_MAPPER.readTree(responseBody);
+                    if (batch) {
+                        parseAndSetBatchOutputs(responseJson);
                     } else {
-                        // Handle error response
-                        setAndStoreOutputParameter(STATUS, "error");
-                        setAndStoreOutputParameter(ERROR, "HTTP " + statusCode + ": " + responseBody);
-                        setAndStoreOutputParameter(OUTPUT, "{}");
-                        setAndStoreOutputParameter(USAGE, "{}");
-                        throw new ConnectorException("Agent returned error status: " + statusCode);
+                        parseAndSetOutputs(responseJson);
                     }
+                } else {
+                    // Handle error response
+                    setAndStoreOutputParameter(STATUS, "error");
+                    setAndStoreOutputParameter(ERROR, "HTTP " + statusCode + ": " + responseBody);
+                    setAndStoreOutputParameter(OUTPUT, "{}");
+                    setAndStoreOutputParameter(USAGE, "{}");
+                    throw new ConnectorException("Agent returned error status: " + statusCode);
                 }
+            } catch (IOException e) {
+                if (deadline.isDone() && !deadline.isCancelled()) {
+                    throw new SocketTimeoutException("Request timed out after " + timeoutMs + " ms");
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+
+        } catch (IOException e) {
+            LOGGER.error("Error communicating with AI Agent", e);
+            setAndStoreOutputParameter(STATUS, "error");
+            setAndStoreOutputParameter(ERROR, "Communication error: " + e.getMessage());
+            setAndStoreOutputParameter(OUTPUT, "{}");
+            setAndStoreOutputParameter(USAGE, "{}");
+            throw new ConnectorException("Failed to communicate with AI Agent: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Async and poll modes. Both only make a short call to the agent, on the same pooled client
+     * and with the same timeout as sync mode: the job is queued by the agent, and the connector
+     * returns its id without waiting for the answer. The process then polls it, or receives it
+     * on the callback URL.
+     */
+    private void executeAsync(String mode, String agentUrl, String authHeader, String task, String inputData,
+                              String params, int timeoutMs, CloseableHttpClient httpClient) throws ConnectorException {
+        try {
+            HttpRequestBase request;
+            if (MODE_ASYNC.equals(mode)) {
+                ObjectNode paramsJson = params != null && !params.trim().isEmpty()
+                    ? (ObjectNode) OBJECT_MAPPER.readTree(params) : OBJECT_MAPPER.createObjectNode();
+                String callbackUrl = (String) getInputParameter(CALLBACK_URL);
+                if (callbackUrl != null && !callbackUrl.trim().isEmpty()) {
+                    paramsJson.put("callback_url", callbackUrl);
+                }
+
+                String url = asyncUrl(agentUrl);
+                LOGGER.info("Submitting job to AI Agent at: {} with task: {}", url, task);
+                String jsonPayload = OBJECT_MAPPER.writeValueAsString(
+                    requestPayload(task, OBJECT_MAPPER.readTree(inputData), paramsJson.isEmpty() ? null : paramsJson));
+                HttpPost httpPost = new HttpPost(url);
+                httpPost.setHeader("Content-Type", "application/json");
+                httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
+                request = httpPost;
+            } else {
+                String url = jobUrl(agentUrl, (String) getInputParameter(JOB_ID));
+                LOGGER.info("Polling AI Agent job at: {}", url);
+                request = new HttpGet(url);
+            }
+            request.setConfig(AgentHttpClients.requestConfig(timeoutMs));
+            if (authHeader != null && !authHeader.trim().isEmpty()) {
+                request.setHeader("Authorization", authHeader);
             }
 
+            ScheduledFuture<?> deadline = AgentHttpClients.abortAfter(request, timeoutMs);
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                LOGGER.debug("Response status: {}, body: {}", statusCode, responseBody);
+
+                if (statusCode >= 200 && statusCode < 300) {
+                    parseAndSetJobOutputs(OBJECT_MAPPER.readTree(responseBody));
+                } else {
+                    setAndStoreOutputParameter(STATUS, "error");
+                    setAndStoreOutputParameter(ERROR, "HTTP " + statusCode + ": " + responseBody);
+                    setAndStoreOutputParameter(OUTPUT, "{}");
+                    setAndStoreOutputParameter(USAGE, "{}");
+                    throw new ConnectorException("Agent returned error status: " + statusCode);
+                }
+            } catch (IOException e) {
+                if (deadline.isDone() && !deadline.isCancelled()) {
+                    throw new SocketTimeoutException("Request timed out after " + timeoutMs + " ms");
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
         } catch (IOException e) {
             LOGGER.error("Error communicating with AI Agent", e);
             setAndStoreOutputParameter(STATUS, "error");
@@ -158,6 +320,81 @@ public class AIAgentConnector extends AbstractConnector {
         }
     }
 
+    /**
+     * Outputs of a job: its id, and its status until it completes. Once done, the outputs of
+     * its response as in sync mode; if it failed, status error.
+     */
+    private void parseAndSetJobOutputs(JsonNode jobJson) {
+        String jobId = jobJson.has("job_id") ? jobJson.get("job_id").asText() : null;
+        String status = jobJson.has("status") ? jobJson.get("status").asText() : "error";
+        setAndStoreOutputParameter(JOB_ID, jobId);
+
+        if ("done".equals(status) && jobJson.has("result")) {
+            parseAndSetOutputs(jobJson.get("result"));
+        } else if ("failed".equals(status) || "error".equals(status)) {
+            setAndStoreOutputParameter(STATUS, "error");
+            setAndStoreOutputParameter(ERROR, jobJson.has("error") ? jobJson.get("error").asText() : "Job failed");
+            setAndStoreOutputParameter(OUTPUT, "{}");
+            setAndStoreOutputParameter(USAGE, "{}");
+        } else {
+            // queued or running
+            setAndStoreOutputParameter(STATUS, status);
+            setAndStoreOutputParameter(ERROR, null);
+            setAndStoreOutputParameter(OUTPUT, "{}");
+            setAndStoreOutputParameter(USAGE, "{}");
+        }
+
+        LOGGER.info("Agent job {} - Status: {}", jobId, status);
+    }
+
+    private static Map<String, Object> requestPayload(String task, JsonNode input, JsonNode params) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("task", task);
+        payload.put("input", input);
+
+        if (params != null) {
+            payload.put("params", params);
+        }
+        return payload;
+    }
+
+    /**
+     * Batch endpoint of an agent: the agent URL followed by /batch (e.g. /run/batch)
+     */
+    static String batchUrl(String agentUrl) {
+        return stripTrailingSlash(agentUrl) + "/batch";
+    }
+
+    /**
+     * Async endpoint of an agent: the agent URL followed by /async (e.g. /run/async)
+     */
+    static String asyncUrl(String agentUrl) {
+        return stripTrailingSlash(agentUrl) + "/async";
+    }
+
+    /**
+     * Job endpoint of an agent, next to its run endpoint (e.g. /run gives /jobs/{id})
+     */
+    static String jobUrl(String agentUrl, String jobId) {
+        return URI.create(stripTrailingSlash(agentUrl))
+            .resolve("jobs/" + URLEncoder.encode(jobId, StandardCharsets.UTF_8))
+            .toString();
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private String mode() {
+        String mode = (String) getInputParameter(MODE);
+        return mode != null && !mode.trim().isEmpty() ? mode.trim() : MODE_SYNC;
+    }
+
+    private int intInput(String name, int defaultValue) {
+        Integer value = (Integer) getInputParameter(name);
+        return value != null ? value : defaultValue;
+    }
+
     private void parseAndSetOutputs(JsonNode responseJson) {
         try {
             // Extract status
@@ -192,6 +429,55 @@ public class AIAgentConnector extends AbstractConnector {
         }
     }
 
+    /**
+     * Outputs of a batch: output and usage are JSON arrays holding the output and usage of
+     * each response, in the order of the inputs. The status is ok, or low_confidence, when all
+     * responses succeeded, error when they all failed and partial otherwise; the error lists
+     * the index and error of each failed response.
+     */
+    private void parseAndSetBatchOutputs(JsonNode responsesJson) {
+        if (!responsesJson.isArray()) {
+            setAndStoreOutputParameter(STATUS, "error");
+            setAndStoreOutputParameter(ERROR, "Response parsing error: expected a JSON array of responses");
+            setAndStoreOutputParameter(OUTPUT, "[]");
+            setAndStoreOutputParameter(USAGE, "[]");
+            return;
+        }
+
+        ArrayNode outputs = OBJECT_MAPPER.createArrayNode();
+        ArrayNode usages = OBJECT_MAPPER.createArrayNode();
+        List<String> errors = new java.util.ArrayList<>();
+        boolean lowConfidence = false;
+        for (int i = 0; i < responsesJson.size(); i++) {
+            JsonNode response = responsesJson.get(i);
+            String status = response.has("status") ? response.get("status").asText() : "ok";
+            outputs.add(response.has("output") ? response.get("output") : OBJECT_MAPPER.createObjectNode());
+            usages.add(response.has("usage") ? response.get("usage") : OBJECT_MAPPER.createObjectNode());
+
+            if ("error".equals(status)) {
+                String error = response.has("error") && !response.get("error").isNull()
+                    ? response.get("error").asText() : "unknown error";
+                errors.add("[" + i + "] " + error);
+            } else if ("low_confidence".equals(status)) {
+                lowConfidence = true;
+            }
+        }
+
+        String status;
+        if (errors.isEmpty()) {
+            status = lowConfidence ? "low_confidence" : "ok";
+        } else {
+            status = errors.size() == responsesJson.size() ? "error" : "partial";
+        }
+        setAndStoreOutputParameter(STATUS, status);
+        setAndStoreOutputParameter(OUTPUT, outputs.toString());
+        setAndStoreOutputParameter(USAGE, usages.toString());
+        setAndStoreOutputParameter(ERROR, errors.isEmpty() ? null : String.join("; ", errors));
+
+        LOGGER.info("Agent batch response - Status: {}, Responses: {}, Errors: {}",
+            status, responsesJson.size(), errors.size());
+    }
+
     /**
      * Public accessor for output parameters (for testing)
      */
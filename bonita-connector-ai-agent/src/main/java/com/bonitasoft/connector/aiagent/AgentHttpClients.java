@@ -0,0 +1,145 @@
+package com.bonitasoft.connector.aiagent;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP clients for the AI Agent Connector
+ *
+ * Connector instances are created for every execution, so clients are kept here, one per
+ * agent URL and pool settings, and reused across executions: connections stay open between
+ * Bonita tasks instead of paying a TCP (and TLS) handshake each time. Idle and expired
+ * connections are closed in the background.
+ *
+ * The clients are never closed: connector instances have no lifecycle spanning executions,
+ * and closing a client shared with other running executions would fail their requests. They
+ * hold no open connection once idle, and the deadline thread stops when no request is pending,
+ * so nothing is left running between tasks.
+ */
+final class AgentHttpClients {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentHttpClients.class);
+
+    // Connections idle for less than this are reused without checking that they are still open
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private static final ConcurrentMap<PoolSettings, CloseableHttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    // Idle time after which the deadline thread stops
+    private static final long DEADLINE_THREAD_KEEP_ALIVE_MS = 60_000;
+
+    // Aborts requests that outlive their timeout, whatever phase they are in
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlineExecutor();
+
+    private AgentHttpClients() {
+    }
+
+    /**
+     * Pooled client for an agent URL, created on first use
+     */
+    static CloseableHttpClient get(String agentUrl, int maxConnections, int maxConnectionsPerRoute, int idleTimeoutMs) {
+        PoolSettings settings = new PoolSettings(agentUrl, maxConnections, maxConnectionsPerRoute, idleTimeoutMs);
+        return CLIENTS.computeIfAbsent(settings, AgentHttpClients::create);
+    }
+
+    /**
+     * Connect, connection lease and socket timeouts, all bounded by the request timeout
+     */
+    static RequestConfig requestConfig(int timeoutMs) {
+        return RequestConfig.custom()
+            .setConnectTimeout(timeoutMs)
+            .setConnectionRequestTimeout(timeoutMs)
+            .setSocketTimeout(timeoutMs)
+            .build();
+    }
+
+    /**
+     * Abort the request once the timeout has elapsed. The individual timeouts of
+     * {@link #requestConfig(int)} only bound each phase; this bounds the whole exchange,
+     * including a response that keeps trickling in. Cancel the returned future once done.
+     */
+    static ScheduledFuture<?> abortAfter(HttpRequestBase request, int timeoutMs) {
+        return DEADLINES.schedule(request::abort, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor deadlineExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ai-agent-connector-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Deadlines of completed requests are cancelled: drop them rather than keep them queued
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(DEADLINE_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static CloseableHttpClient create(PoolSettings settings) {
+        LOGGER.info("Creating HTTP connection pool for {} (max {} connections, {} per route, idle timeout {} ms)",
+            settings.agentUrl, settings.maxConnections, settings.maxConnectionsPerRoute, settings.idleTimeoutMs);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(settings.maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            // Keep connections alive as long as the agent allows, but never beyond the idle timeout
+            .setKeepAliveStrategy((response, context) -> {
+                long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return keepAlive > 0 ? Math.min(keepAlive, settings.idleTimeoutMs) : settings.idleTimeoutMs;
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(settings.idleTimeoutMs, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    private static final class PoolSettings {
+        private final String agentUrl;
+        private final int maxConnections;
+        private final int maxConnectionsPerRoute;
+        private final int idleTimeoutMs;
+
+        PoolSettings(String agentUrl, int maxConnections, int maxConnectionsPerRoute, int idleTimeoutMs) {
+            this.agentUrl = agentUrl;
+            this.maxConnections = maxConnections;
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolSettings)) {
+                return false;
+            }
+            PoolSettings other = (PoolSettings) o;
+            return maxConnections == other.maxConnections
+                && maxConnectionsPerRoute == other.maxConnectionsPerRoute
+                && idleTimeoutMs == other.idleTimeoutMs
+                && agentUrl.equals(other.agentUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(agentUrl, maxConnections, maxConnectionsPerRoute, idleTimeoutMs);
+        }
+    }
+}
@@ -347,4 +347,244 @@ class AIAgentConnectorIT {
         verify(postRequestedFor(urlEqualTo("/run"))
             .withHeader("Authorization", equalTo("Bearer secret-token")));
     }
+
+    @Test
+    @DisplayName("Test 8: Timeout applied to a stalled agent")
+    void testTimeoutStalledAgent() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo("/run"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"status\": \"ok\"}")
+                .withFixedDelay(3000)));
+
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.INPUT_DATA, "{\"question\": \"test\"}");
+        inputs.put(AIAgentConnector.TIMEOUT_MS, 500);
+
+        connector.setInputParameters(inputs);
+
+        // When
+        connector.validateInputParameters();
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> connector.executeBusinessLogic())
+            .isInstanceOf(ConnectorException.class);
+
+        // Then
+        assertThat(java.time.Duration.ofNanos(System.nanoTime() - start)).isLessThan(java.time.Duration.ofSeconds(2));
+        assertThat(connector.getOutputParameter(AIAgentConnector.STATUS)).isEqualTo("error");
+    }
+
+    @Test
+    @DisplayName("Test 9: Timeout bounds the whole exchange of a slowly streaming agent")
+    void testTimeoutSlowResponse() throws Exception {
+        // Given: every chunk arrives well within the socket timeout, the whole body does not
+        stubFor(post(urlEqualTo("/run"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"status\": \"ok\", \"output\": {\"answer\": \"slow\"}}")
+                .withChunkedDribbleDelay(10, 4000)));
+
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.INPUT_DATA, "{\"question\": \"test\"}");
+        inputs.put(AIAgentConnector.TIMEOUT_MS, 1000);
+
+        connector.setInputParameters(inputs);
+
+        // When
+        connector.validateInputParameters();
+        assertThatThrownBy(() -> connector.executeBusinessLogic())
+            .isInstanceOf(ConnectorException.class);
+
+        // Then
+        assertThat(connector.getOutputParameter(AIAgentConnector.ERROR)).asString()
+            .contains("timed out after 1000 ms");
+    }
+
+    @Test
+    @DisplayName("Test 10: Pooled client shared across executions")
+    void testPooledClientReused() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo("/run"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"status\": \"ok\", \"output\": {\"answer\": \"pooled\"}}")));
+
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.INPUT_DATA, "{\"question\": \"test\"}");
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            AIAgentConnector execution = new AIAgentConnector();
+            execution.setInputParameters(inputs);
+            execution.validateInputParameters();
+            execution.executeBusinessLogic();
+            assertThat(execution.getOutputParameter(AIAgentConnector.STATUS)).isEqualTo("ok");
+        }
+
+        // Then
+        verify(3, postRequestedFor(urlEqualTo("/run")));
+        assertThat(AgentHttpClients.get("http://localhost:8089/run", 50, 20, 60000))
+            .isSameAs(AgentHttpClients.get("http://localhost:8089/run", 50, 20, 60000));
+    }
+
+    @Test
+    @DisplayName("Test 11: Input validation - non-positive timeout")
+    void testValidationInvalidTimeout() {
+        // Given
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.INPUT_DATA, "{\"question\": \"test\"}");
+        inputs.put(AIAgentConnector.TIMEOUT_MS, 0);
+        connector.setInputParameters(inputs);
+
+        // When & Then
+        assertThatThrownBy(() -> connector.validateInputParameters())
+            .isInstanceOf(ConnectorValidationException.class)
+            .hasMessageContaining("timeoutMs must be a positive number");
+    }
+
+    @Test
+    @DisplayName("Test 12: Batch mode - JSON array of inputs in one round trip")
+    void testBatchMode() throws Exception {
+        // Given
+        String mockResponse = """
+            [
+                {
+                    "status": "ok",
+                    "output": {"answer": "Within 5 business days.", "confidence": 0.9},
+                    "usage": {"documentsSearched": 3}
+                },
+                {
+                    "status": "error",
+                    "error": "Question is required in input_data"
+                }
+            ]
+            """;
+
+        stubFor(post(urlEqualTo("/run/batch"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody(mockResponse)));
+
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.TASK, "rag_qa");
+        inputs.put(AIAgentConnector.INPUT_DATA, "[{\"question\": \"Onboarding deadline?\"}, {}]");
+
+        connector.setInputParameters(inputs);
+
+        // When
+        connector.validateInputParameters();
+        connector.executeBusinessLogic();
+
+        // Then
+        verify(postRequestedFor(urlEqualTo("/run/batch"))
+            .withRequestBody(matchingJsonPath("$[0].input.question", equalTo("Onboarding deadline?")))
+            .withRequestBody(matchingJsonPath("$[1].task", equalTo("rag_qa"))));
+
+        assertThat(connector.getOutputParameter(AIAgentConnector.STATUS)).isEqualTo("partial");
+        assertThat(connector.getOutputParameter(AIAgentConnector.ERROR)).asString()
+            .contains("[1] Question is required");
+
+        String output = (String) connector.getOutputParameter(AIAgentConnector.OUTPUT);
+        java.util.List<?> outputs = objectMapper.readValue(output, java.util.List.class);
+        assertThat(outputs).hasSize(2);
+        assertThat(((Map<?, ?>) outputs.get(0)).get("answer")).isEqualTo("Within 5 business days.");
+    }
+
+    @Test
+    @DisplayName("Test 13: Input validation - empty batch")
+    void testValidationEmptyBatch() {
+        // Given
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.INPUT_DATA, "[]");
+        connector.setInputParameters(inputs);
+
+        // When & Then
+        assertThatThrownBy(() -> connector.validateInputParameters())
+            .isInstanceOf(ConnectorValidationException.class)
+            .hasMessageContaining("must not be empty");
+    }
+
+    @Test
+    @DisplayName("Test 14: Async mode - job submitted, then polled until done")
+    void testAsyncModeAndPoll() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo("/run/async"))
+            .willReturn(aResponse()
+                .withStatus(202)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"job_id\": \"job-42\", \"status\": \"queued\"}")));
+        stubFor(get(urlEqualTo("/jobs/job-42"))
+            .willReturn(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody("""
+                    {
+                        "job_id": "job-42",
+                        "status": "done",
+                        "result": {
+                            "status": "ok",
+                            "output": {"answer": "Within 72 hours."},
+                            "usage": {"documentsSearched": 3}
+                        }
+                    }
+                    """)));
+
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.MODE, "async");
+        inputs.put(AIAgentConnector.INPUT_DATA, "{\"question\": \"Incident deadline?\"}");
+        inputs.put(AIAgentConnector.CALLBACK_URL, "http://localhost:9999/callback");
+
+        connector.setInputParameters(inputs);
+
+        // When
+        connector.validateInputParameters();
+        connector.executeBusinessLogic();
+
+        // Then
+        assertThat(connector.getOutputParameter(AIAgentConnector.STATUS)).isEqualTo("queued");
+        assertThat(connector.getOutputParameter(AIAgentConnector.JOB_ID)).isEqualTo("job-42");
+        verify(postRequestedFor(urlEqualTo("/run/async"))
+            .withRequestBody(matchingJsonPath("$.params.callback_url", equalTo("http://localhost:9999/callback"))));
+
+        // When polled
+        AIAgentConnector poll = new AIAgentConnector();
+        Map<String, Object> pollInputs = new HashMap<>();
+        pollInputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        pollInputs.put(AIAgentConnector.MODE, "poll");
+        pollInputs.put(AIAgentConnector.JOB_ID, "job-42");
+        poll.setInputParameters(pollInputs);
+        poll.validateInputParameters();
+        poll.executeBusinessLogic();
+
+        // Then
+        assertThat(poll.getOutputParameter(AIAgentConnector.STATUS)).isEqualTo("ok");
+        assertThat(poll.getOutputParameter(AIAgentConnector.OUTPUT)).asString().contains("Within 72 hours.");
+    }
+
+    @Test
+    @DisplayName("Test 15: Input validation - poll mode without job id")
+    void testValidationPollWithoutJobId() {
+        // Given
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put(AIAgentConnector.AGENT_URL, "http://localhost:8089/run");
+        inputs.put(AIAgentConnector.MODE, "poll");
+        connector.setInputParameters(inputs);
+
+        // When & Then
+        assertThatThrownBy(() -> connector.validateInputParameters())
+            .isInstanceOf(ConnectorValidationException.class)
+            .hasMessageContaining("Job id is required");
+    }
 }
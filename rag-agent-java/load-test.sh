@@ -0,0 +1,51 @@
+#!/bin/bash
+# Load test of the agent with platform threads, then with virtual threads
+# Usage: ./load-test.sh [connections] [duration seconds] [warmup seconds]
+
+set -e
+
+CONNECTIONS=${1:-1000}
+DURATION=${2:-30}
+WARMUP=${3:-10}
+PORT=${PORT:-8000}
+
+AGENT_PATH="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+cd "$AGENT_PATH"
+
+echo "Building agent and load test..."
+mvn -q -Pbenchmarks package test-compile -DskipTests
+
+JAR=$(ls target/rag-agent-*.jar | grep -v original | head -n 1)
+RESULTS=$(mktemp)
+trap 'rm -f "$RESULTS"; [ -n "$AGENT_PID" ] && kill "$AGENT_PID" 2>/dev/null' EXIT
+
+run() {
+    local label=$1 virtual=$2 header=$3
+
+    # The query cache is disabled so that every request does the full retrieval
+    java --add-modules jdk.incubator.vector -jar "$JAR" --server.port="$PORT" \
+        --spring.threads.virtual.enabled="$virtual" \
+        --rag.query-cache.enabled=false \
+        --logging.level.com.bonitasoft.ai.ragagent=WARN > /dev/null 2>&1 &
+    AGENT_PID=$!
+
+    for _ in $(seq 1 60); do
+        curl -sf "http://localhost:$PORT/health" > /dev/null && break
+        sleep 1
+    done
+
+    echo "Running $label: $CONNECTIONS connections, ${WARMUP}s warmup, ${DURATION}s measured..."
+    java -cp target/test-classes com.bonitasoft.ai.ragagent.benchmark.LoadTest \
+        --url "http://localhost:$PORT/run" --connections "$CONNECTIONS" \
+        --duration "$DURATION" --warmup "$WARMUP" --label "$label" $header >> "$RESULTS"
+
+    kill "$AGENT_PID"
+    wait "$AGENT_PID" 2>/dev/null || true
+    AGENT_PID=
+}
+
+run platform false --header
+run virtual true
+
+echo ""
+cat "$RESULTS"
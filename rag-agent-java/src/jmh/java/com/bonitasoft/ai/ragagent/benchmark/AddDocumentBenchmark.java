@@ -0,0 +1,51 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime path: time to add 64 documents one by one with {@link SimpleVectorStore#addDocument}
+ * to a store already holding the corpus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = AddDocumentBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = AddDocumentBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AddDocumentBenchmark {
+
+    static final int BATCH = 64;
+
+    @Param({"1000", "10000", "100000"})
+    private int corpusSize;
+
+    private List<Document> corpus;
+    private List<Document> extraDocuments;
+    private SimpleVectorStore store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        CorpusGenerator generator = new CorpusGenerator(42);
+        corpus = generator.documents(corpusSize);
+        extraDocuments = generator.documents(BATCH);
+    }
+
+    @Setup(Level.Iteration)
+    public void populate() {
+        store = new SimpleVectorStore();
+        store.addDocuments(corpus);
+        next = 0;
+    }
+
+    @Benchmark
+    public SimpleVectorStore addDocument() {
+        store.addDocument(extraDocuments.get(next++ % BATCH));
+        return store;
+    }
+}
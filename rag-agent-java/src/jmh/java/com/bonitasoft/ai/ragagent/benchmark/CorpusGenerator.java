@@ -0,0 +1,112 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic corpus for benchmarks.
+ *
+ * Words are drawn from a fixed vocabulary with a Zipf distribution, like natural text.
+ * Documents are spread over a small set of categories with several dated versions each,
+ * so that retrieved results regularly trigger conflict detection.
+ */
+public class CorpusGenerator {
+
+    private static final int VOCABULARY_SIZE = 20_000;
+    private static final int CATEGORIES = 50;
+    private static final String[] STOP_WORDS = {"the", "and", "for", "with", "this", "that", "from", "what", "when"};
+
+    private final Random random;
+    private final String[] vocabulary;
+    private final double[] cumulativeWeights;
+
+    public CorpusGenerator(long seed) {
+        this.random = new Random(seed);
+        this.vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = word(i);
+        }
+
+        // Zipf weights 1/rank, as a cumulative distribution for sampling by binary search
+        this.cumulativeWeights = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulativeWeights[rank] = sum;
+        }
+    }
+
+    /**
+     * Generate documents of 80 to 200 words
+     */
+    public List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>(count);
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < count; i++) {
+            int category = random.nextInt(CATEGORIES);
+            documents.add(Document.builder()
+                    .id("doc-" + i)
+                    .title("Policy " + category + " #" + i)
+                    .content(text(80 + random.nextInt(121), true))
+                    .date(start.plusDays(random.nextInt(3650)))
+                    .version("v" + (1 + random.nextInt(5)))
+                    .category("category-" + category)
+                    .build());
+        }
+        return documents;
+    }
+
+    /**
+     * Generate questions of 3 to 8 words, mixing stop words and content words
+     */
+    public String[] queries(int count) {
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            queries[i] = "What is the " + text(3 + random.nextInt(6), false) + "?";
+        }
+        return queries;
+    }
+
+    private String text(int words, boolean punctuation) {
+        StringBuilder text = new StringBuilder(words * 8);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(punctuation && random.nextInt(12) == 0 ? ". " : " ");
+            }
+            if (random.nextInt(5) == 0) {
+                text.append(STOP_WORDS[random.nextInt(STOP_WORDS.length)]);
+            } else {
+                text.append(vocabulary[sampleRank()]);
+            }
+        }
+        return text.toString();
+    }
+
+    private int sampleRank() {
+        double target = random.nextDouble() * cumulativeWeights[VOCABULARY_SIZE - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        return index >= 0 ? index : Math.min(-index - 1, VOCABULARY_SIZE - 1);
+    }
+
+    /**
+     * Pronounceable pseudo-word for a vocabulary rank, at least three letters long
+     */
+    private static String word(int rank) {
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int n = rank;
+        do {
+            word.append(consonants.charAt(n % consonants.length()));
+            n /= consonants.length();
+            word.append(vowels.charAt(n % vowels.length()));
+            n /= vowels.length();
+        } while (n > 0 || word.length() < 4);
+        return word.toString();
+    }
+}
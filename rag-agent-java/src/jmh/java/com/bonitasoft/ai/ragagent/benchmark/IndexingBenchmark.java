@@ -0,0 +1,37 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup path: index a whole corpus with {@link SimpleVectorStore#addDocuments}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IndexingBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int corpusSize;
+
+    private List<Document> corpus;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        corpus = new CorpusGenerator(42).documents(corpusSize);
+    }
+
+    @Benchmark
+    public SimpleVectorStore bulkLoad() {
+        SimpleVectorStore store = new SimpleVectorStore();
+        store.addDocuments(corpus);
+        return store;
+    }
+}
@@ -0,0 +1,170 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Closed-loop HTTP load test of a running agent: each of the concurrent clients sends a query
+ * to /run, waits for the response and sends the next one, over its own connection. Reports
+ * the throughput and latency percentiles measured after a warmup period, as one table row.
+ *
+ * Not a JMH benchmark: it measures the server as a whole, thread model included. load-test.sh
+ * runs it against the agent with platform threads and with virtual threads.
+ *
+ * Options: --url (http://localhost:8000/run), --connections (1000), --duration in seconds (30),
+ * --warmup in seconds (10), --label (the row name), --header to print the table header first.
+ */
+public class LoadTest {
+
+    private static final String[] QUESTIONS = {
+        "How long do I have to report a security incident?",
+        "What is the deadline for completing the employee onboarding process?",
+        "Who must be notified after a data breach?",
+        "What equipment is set up on the first day?",
+        "Which procedure applies to security incidents in 2023?",
+        "What does the onboarding checklist contain?",
+        "How are incidents escalated to management?",
+        "When is the HR orientation scheduled?"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        URI url = URI.create(options.getOrDefault("url", "http://localhost:8000/run"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "1000"));
+        long durationNanos = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30"))).toNanos();
+        long warmupNanos = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10"))).toNanos();
+        String label = options.getOrDefault("label", "agent");
+
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+
+        List<Client> clients = new ArrayList<>(connections);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                Client client = new Client(url, i);
+                clients.add(client);
+                executor.execute(() -> client.run(measureStart, end));
+            }
+        }
+
+        long requests = 0;
+        long errors = 0;
+        long[] latencies = new long[0];
+        for (Client client : clients) {
+            requests += client.count;
+            errors += client.errors;
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + client.count);
+            System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+        }
+        Arrays.sort(latencies);
+
+        if (options.containsKey("header")) {
+            System.out.printf("%-10s %11s %9s %7s %12s %9s %9s %10s %9s%n",
+                "mode", "connections", "requests", "errors", "throughput/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        }
+        System.out.printf("%-10s %11d %9d %7d %12.1f %9.1f %9.1f %10.1f %9.1f%n",
+            label, connections, requests, errors, requests / (durationNanos / 1e9),
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+            percentile(latencies, 1.0));
+    }
+
+    /**
+     * One connection, sending requests back to back
+     */
+    private static final class Client {
+        private final HttpClient http;
+        private final HttpRequest[] requests;
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        Client(URI url, int id) {
+            // One client per connection: the JDK client would otherwise share its connection pool
+            this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+            this.requests = new HttpRequest[QUESTIONS.length];
+            for (int i = 0; i < QUESTIONS.length; i++) {
+                String question = QUESTIONS[(i + id) % QUESTIONS.length];
+                requests[i] = HttpRequest.newBuilder(url)
+                    .timeout(Duration.ofSeconds(60))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"task\": \"rag_qa\", \"input_data\": {\"question\": \"" + question + "\"}}"))
+                    .build();
+            }
+        }
+
+        void run(long measureStart, long end) {
+            for (int i = 0; ; i++) {
+                long sent = System.nanoTime();
+                if (sent >= end) {
+                    return;
+                }
+                boolean failed;
+                try {
+                    HttpResponse<Void> response = http.send(requests[i % requests.length],
+                        HttpResponse.BodyHandlers.discarding());
+                    failed = response.statusCode() != 200;
+                } catch (IOException e) {
+                    failed = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long received = System.nanoTime();
+
+                // Only requests sent after the warmup and answered before the end are measured
+                if (sent >= measureStart && received <= end) {
+                    if (failed) {
+                        errors++;
+                    } else {
+                        record(received - sent);
+                    }
+                }
+            }
+        }
+
+        private void record(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(fraction * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(name, hasValue ? args[++i] : "true");
+        }
+        return options;
+    }
+}
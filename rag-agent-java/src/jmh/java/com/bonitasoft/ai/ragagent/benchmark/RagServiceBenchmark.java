@@ -0,0 +1,93 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.service.EmbeddingService;
+import com.bonitasoft.ai.ragagent.service.QueryCache;
+import com.bonitasoft.ai.ragagent.service.RagMetrics;
+import com.bonitasoft.ai.ragagent.service.RagService;
+import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full query pipeline: retrieval, conflict detection, answer and sources building,
+ * and JSON serialization of the response as done by the /run endpoint
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RagServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int corpusSize;
+
+    private RagService ragService;
+    private RagService cachedRagService;
+    private ObjectMapper objectMapper;
+    private String[] queries;
+    private AgentResponse[] responses;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Same settings as spring.jackson in application.yml
+        objectMapper = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+
+        CorpusGenerator generator = new CorpusGenerator(42);
+        SimpleVectorStore store = new SimpleVectorStore();
+        store.addDocuments(generator.documents(corpusSize));
+
+        // The pipeline itself is measured without the query cache; cachedProcessQuery measures hits
+        ragService = ragService(store, new QueryCache(false, 0, Duration.ZERO, new SimpleMeterRegistry()));
+        cachedRagService = ragService(store,
+                new QueryCache(true, 4096, Duration.ofHours(1), new SimpleMeterRegistry()));
+
+        queries = generator.queries(1024);
+        responses = new AgentResponse[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            responses[i] = ragService.processQuery(queries[i]);
+            cachedRagService.processQuery(queries[i]);
+        }
+    }
+
+    private RagService ragService(SimpleVectorStore store, QueryCache queryCache) {
+        RagMetrics metrics = new RagMetrics(new SimpleMeterRegistry(), store);
+        RagService service = new RagService(objectMapper, store, queryCache, metrics, EmbeddingService.disabled());
+        ReflectionTestUtils.setField(service, "confidenceThreshold", 0.65);
+        ReflectionTestUtils.setField(service, "maxSources", 5);
+        return service;
+    }
+
+    @Benchmark
+    public AgentResponse processQuery() {
+        return ragService.processQuery(queries[next++ & (queries.length - 1)]);
+    }
+
+    @Benchmark
+    public AgentResponse cachedProcessQuery() {
+        return cachedRagService.processQuery(queries[next++ & (queries.length - 1)]);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(responses[next++ & (responses.length - 1)]);
+    }
+
+    @Benchmark
+    public byte[] processQueryAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ragService.processQuery(queries[next++ & (queries.length - 1)]));
+    }
+}
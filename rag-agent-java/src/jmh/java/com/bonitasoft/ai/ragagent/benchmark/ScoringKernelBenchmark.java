@@ -0,0 +1,197 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.index.ScoringKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar and SIMD scoring kernels over {@value #DOCUMENTS} stored vectors, scanned one after
+ * the other as by a query: dense dot products of unit-length embeddings, and sparse dot
+ * products of term id/value vectors with a {@value #QUERY_TERMS}-term query. The sparse
+ * vectors are also scored with the {@code HashMap<String, Double>} loop the store used before
+ * it had primitive vectors, as a baseline. Scores are per document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class ScoringKernelBenchmark {
+
+    private static final int DOCUMENTS = 1024;
+    private static final int QUERY_TERMS = 8;
+    private static final int VOCABULARY = 50_000;
+
+    @State(Scope.Benchmark)
+    public static class DenseState {
+
+        @Param({"scalar", "simd"})
+        private String kernel;
+
+        @Param({"384", "1024"})
+        private int dimension;
+
+        ScoringKernel scoringKernel;
+        float[] vectors;
+        float[] query;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            scoringKernel = kernel(kernel);
+            Random random = new Random(42);
+            vectors = new float[DOCUMENTS * dimension];
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = (float) random.nextGaussian();
+            }
+            query = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                query[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SparseState {
+
+        @Param({"scalar", "simd"})
+        private String kernel;
+
+        @Param({"32", "256"})
+        private int documentTerms;
+
+        ScoringKernel scoringKernel;
+        int[] termIds;
+        float[] values;
+        int[] offsets;
+        int[] queryTermIds;
+        float[] queryValues;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            scoringKernel = kernel(kernel);
+            SparseCorpus corpus = new SparseCorpus(documentTerms);
+            termIds = corpus.termIds;
+            values = corpus.values;
+            offsets = corpus.offsets;
+            queryTermIds = corpus.queryTermIds;
+            queryValues = corpus.queryValues;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class HashMapState {
+
+        @Param({"32", "256"})
+        private int documentTerms;
+
+        Map<String, Double>[] documents;
+        Map<String, Double> query;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setup() {
+            SparseCorpus corpus = new SparseCorpus(documentTerms);
+            documents = new Map[DOCUMENTS];
+            for (int d = 0; d < DOCUMENTS; d++) {
+                documents[d] = new HashMap<>();
+                for (int i = corpus.offsets[d]; i < corpus.offsets[d + 1]; i++) {
+                    documents[d].put("term" + corpus.termIds[i], (double) corpus.values[i]);
+                }
+            }
+            query = new HashMap<>();
+            for (int j = 0; j < QUERY_TERMS; j++) {
+                query.put("term" + corpus.queryTermIds[j], (double) corpus.queryValues[j]);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public float denseDot(DenseState state) {
+        float sum = 0f;
+        for (int d = 0; d < DOCUMENTS; d++) {
+            sum += state.scoringKernel.dot(state.vectors, d * state.dimension, state.query, 0, state.dimension);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public double sparseDot(SparseState state) {
+        double sum = 0.0;
+        for (int d = 0; d < DOCUMENTS; d++) {
+            sum += state.scoringKernel.sparseDot(state.termIds, state.values, state.offsets[d], state.offsets[d + 1],
+                state.queryTermIds, state.queryValues, QUERY_TERMS);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public double sparseDotHashMap(HashMapState state) {
+        double sum = 0.0;
+        for (Map<String, Double> document : state.documents) {
+            for (Map.Entry<String, Double> entry : state.query.entrySet()) {
+                Double value = document.get(entry.getKey());
+                if (value != null) {
+                    sum += entry.getValue() * value;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static ScoringKernel kernel(String name) {
+        return name.equals("simd") ? ScoringKernel.simd() : ScoringKernel.scalar();
+    }
+
+    /**
+     * Documents of random distinct sorted term ids, and a query sharing half its terms with
+     * each document on average
+     */
+    private static final class SparseCorpus {
+        final int[] termIds;
+        final float[] values;
+        final int[] offsets = new int[DOCUMENTS + 1];
+        final int[] queryTermIds = new int[QUERY_TERMS];
+        final float[] queryValues = new float[QUERY_TERMS];
+
+        SparseCorpus(int documentTerms) {
+            Random random = new Random(42);
+            TreeSet<Integer> queryTerms = new TreeSet<>();
+            while (queryTerms.size() < QUERY_TERMS) {
+                queryTerms.add(random.nextInt(VOCABULARY));
+            }
+            int j = 0;
+            for (int term : queryTerms) {
+                queryTermIds[j] = term;
+                queryValues[j++] = random.nextFloat();
+            }
+
+            termIds = new int[DOCUMENTS * documentTerms];
+            values = new float[termIds.length];
+            for (int d = 0; d < DOCUMENTS; d++) {
+                TreeSet<Integer> terms = new TreeSet<>();
+                for (int term : queryTermIds) {
+                    if (random.nextBoolean()) {
+                        terms.add(term);
+                    }
+                }
+                while (terms.size() < documentTerms) {
+                    terms.add(random.nextInt(VOCABULARY));
+                }
+                int i = d * documentTerms;
+                for (int term : terms) {
+                    termIds[i] = term;
+                    values[i++] = random.nextFloat();
+                }
+                offsets[d + 1] = i;
+            }
+        }
+    }
+}
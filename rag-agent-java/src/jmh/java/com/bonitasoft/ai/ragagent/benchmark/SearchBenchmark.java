@@ -0,0 +1,66 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link SimpleVectorStore#search} by corpus size and topK, on one thread or split
+ * into shards searched in parallel, ranking by TF-IDF cosine similarity or by BM25, documents
+ * indexed whole or as passages of {@code passageSize} words overlapping by a quarter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int corpusSize;
+
+    @Param({"1", "5", "20", "100"})
+    private int topK;
+
+    @Param({"1", "4", "16"})
+    private int shards;
+
+    @Param({"tfidf", "bm25"})
+    private String scorer;
+
+    @Param({"0", "64"})
+    private int passageSize;
+
+    private SimpleVectorStore store;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CorpusGenerator generator = new CorpusGenerator(42);
+        store = new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, shards,
+                scorer.equals("bm25") ? new Bm25(1.2f, 0.75f) : null,
+                new PassageSplitter(passageSize, passageSize / 4));
+        store.addDocuments(generator.documents(corpusSize));
+        queries = generator.queries(1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public List<Passage> search() {
+        String query = queries[next++ & (queries.length - 1)];
+        return store.search(query, topK);
+    }
+}
@@ -0,0 +1,59 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.index.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Single-pass {@link Tokenizer} against the former regex pipeline.
+ * Run with {@code -prof gc} to compare the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "the", "and", "for", "are", "but", "not", "you", "all", "can", "her", "was",
+        "one", "our", "out", "day", "get", "has", "him", "his", "how", "its", "may",
+        "she", "who", "will", "with", "this", "that", "from", "have", "been", "they",
+        "what", "when", "your", "more", "into", "than", "some", "time", "very", "would"
+    );
+
+    @Param({"query", "document"})
+    private String input;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CorpusGenerator generator = new CorpusGenerator(42);
+        text = "query".equals(input)
+                ? generator.queries(1)[0]
+                : generator.documents(1).get(0).getContent();
+    }
+
+    @Benchmark
+    public int tokenizer(Blackhole blackhole) {
+        return Tokenizer.tokenize(text, (buffer, length) -> blackhole.consume(buffer[0]));
+    }
+
+    @Benchmark
+    public List<String> regexPipeline() {
+        return Arrays.stream(text.toLowerCase()
+                        .replaceAll("[^a-z0-9\\s]", " ")
+                        .split("\\s+"))
+                .filter(term -> term.length() > 2)
+                .filter(term -> !STOP_WORDS.contains(term))
+                .collect(Collectors.toList());
+    }
+}
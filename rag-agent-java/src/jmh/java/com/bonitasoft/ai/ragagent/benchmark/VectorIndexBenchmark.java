@@ -0,0 +1,116 @@
+package com.bonitasoft.ai.ragagent.benchmark;
+
+import com.bonitasoft.ai.ragagent.index.Neighbors;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recall against latency of the HNSW index, compared with the exact scan, on clustered
+ * synthetic embeddings. The recall@k of each configuration, measured on 200 queries against
+ * the exact results, and its build time are printed during setup; the benchmark measures the
+ * search latency. {@code index} is {@code flat} or {@code hnsw:<efSearch>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class VectorIndexBenchmark {
+
+    private static final int CLUSTERS = 256;
+    private static final int RECALL_QUERIES = 200;
+
+    @Param({"10000", "100000"})
+    private int corpusSize;
+
+    @Param({"384", "1024"})
+    private int dimension;
+
+    @Param({"flat", "hnsw:16", "hnsw:64", "hnsw:256"})
+    private String index;
+
+    @Param({"10"})
+    private int topK;
+
+    private VectorIndex vectorIndex;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, null, 1.0f);
+        }
+
+        long start = System.nanoTime();
+        vectorIndex = create(index);
+        VectorIndex exact = VectorIndex.flat(dimension);
+        for (int i = 0; i < corpusSize; i++) {
+            float[] vector = gaussian(random, centers[random.nextInt(CLUSTERS)], 0.5f);
+            vectorIndex.add(vector);
+            if (!index.equals("flat")) {
+                exact.add(vector);
+            }
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        queries = new float[1024][];
+        for (int q = 0; q < queries.length; q++) {
+            queries[q] = gaussian(random, centers[random.nextInt(CLUSTERS)], 0.5f);
+        }
+
+        double recall = 1.0;
+        if (!index.equals("flat")) {
+            int found = 0;
+            for (int q = 0; q < RECALL_QUERIES; q++) {
+                Set<Integer> expected = ids(exact.search(queries[q], topK));
+                Neighbors actual = vectorIndex.search(queries[q], topK);
+                for (int i = 0; i < actual.size(); i++) {
+                    if (expected.contains(actual.id(i))) {
+                        found++;
+                    }
+                }
+            }
+            recall = (double) found / (RECALL_QUERIES * topK);
+        }
+        System.out.printf("%n%s, %d vectors of dimension %d: recall@%d %.3f, built in %d ms, %d MB%n",
+            index, corpusSize, dimension, topK, recall, buildMillis, vectorIndex.bytesUsed() >> 20);
+    }
+
+    @Benchmark
+    public Neighbors search() {
+        return vectorIndex.search(queries[next++ & (queries.length - 1)], topK);
+    }
+
+    private VectorIndex create(String spec) {
+        if (spec.equals("flat")) {
+            return VectorIndex.flat(dimension);
+        }
+        int efSearch = Integer.parseInt(spec.substring(spec.indexOf(':') + 1));
+        return VectorIndex.hnsw(dimension, 16, 200, efSearch);
+    }
+
+    private float[] gaussian(Random random, float[] center, float deviation) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (center != null ? center[i] : 0f) + (float) random.nextGaussian() * deviation;
+        }
+        return vector;
+    }
+
+    private static Set<Integer> ids(Neighbors neighbors) {
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < neighbors.size(); i++) {
+            ids.add(neighbors.id(i));
+        }
+        return ids;
+    }
+}
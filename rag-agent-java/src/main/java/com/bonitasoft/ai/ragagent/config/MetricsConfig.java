@@ -0,0 +1,42 @@
+package com.bonitasoft.ai.ragagent.config;
+
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.service.QueryTimings.Stage;
+import com.bonitasoft.ai.ragagent.service.RagMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Configuration for the metrics that are not recorded by the services themselves
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * JSON converter replacing Spring Boot's default one, timing the serialization of query
+     * responses. Responses are serialized after the query has returned, so this stage is
+     * only published as a metric, not in the usage of the response.
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                   RagMetrics metrics) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+                long start = System.nanoTime();
+                super.writeInternal(object, type, outputMessage);
+                // Single and batch query responses
+                if (object instanceof AgentResponse || object instanceof List) {
+                    metrics.record(Stage.SERIALIZATION, System.nanoTime() - start);
+                }
+            }
+        };
+    }
+}
@@ -1,21 +1,55 @@
 package com.bonitasoft.ai.ragagent.config;
 
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
 import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.function.IntFunction;
+
 /**
  * Configuration for Vector Store
- * Uses a simple in-memory vector store with TF-IDF embeddings
+ * Uses a simple in-memory vector store with TF-IDF embeddings, ranked by cosine similarity or BM25
  */
 @Configuration
 public class VectorStoreConfig {
 
     /**
-     * Configure the in-memory vector store
+     * Configure the in-memory vector store.
+     * Document vectors can be kept off-heap to relieve the Java heap on large corpora.
+     * Dense embeddings are indexed with HNSW by default, or scanned exactly with {@code flat}.
+     * Searches of large indexes are split into {@code shards} searched in parallel.
+     * Documents are ranked by TF-IDF cosine similarity, or by BM25 with {@code scorer: bm25},
+     * of their best passage of {@code rag.passages.size} words; 0 indexes them whole.
      */
     @Bean
-    public SimpleVectorStore vectorStore() {
-        return new SimpleVectorStore();
+    public SimpleVectorStore vectorStore(@Value("${rag.vector-store.off-heap:false}") boolean offHeap,
+                                         @Value("${rag.vector-index.type:hnsw}") String indexType,
+                                         @Value("${rag.vector-index.m:16}") int m,
+                                         @Value("${rag.vector-index.ef-construction:200}") int efConstruction,
+                                         @Value("${rag.vector-index.ef-search:64}") int efSearch,
+                                         @Value("${rag.vector-store.shards:1}") int shards,
+                                         @Value("${rag.vector-store.scorer:tfidf}") String scorer,
+                                         @Value("${rag.vector-store.bm25.k1:1.2}") float k1,
+                                         @Value("${rag.vector-store.bm25.b:0.75}") float b,
+                                         @Value("${rag.passages.size:64}") int passageSize,
+                                         @Value("${rag.passages.overlap:16}") int passageOverlap) {
+        IntFunction<VectorIndex> vectorIndexFactory = switch (indexType) {
+            case "hnsw" -> dimension -> VectorIndex.hnsw(dimension, m, efConstruction, efSearch);
+            case "flat" -> VectorIndex::flat;
+            default -> throw new IllegalArgumentException("Unknown rag.vector-index.type: " + indexType);
+        };
+        Bm25 bm25 = switch (scorer) {
+            case "tfidf" -> null;
+            case "bm25" -> new Bm25(k1, b);
+            default -> throw new IllegalArgumentException("Unknown rag.vector-store.scorer: " + scorer);
+        };
+        int shardCount = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        return new SimpleVectorStore(offHeap ? VectorArena::offHeap : VectorArena::onHeap, vectorIndexFactory,
+                shardCount, bm25, new PassageSplitter(passageSize, passageOverlap));
     }
 }
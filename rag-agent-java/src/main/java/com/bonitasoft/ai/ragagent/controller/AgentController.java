@@ -2,16 +2,29 @@ package com.bonitasoft.ai.ragagent.controller;
 
 import com.bonitasoft.ai.ragagent.model.AgentRequest;
 import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.model.IngestionResponse;
+import com.bonitasoft.ai.ragagent.model.JobResponse;
+import com.bonitasoft.ai.ragagent.service.DocumentIngestionService;
+import com.bonitasoft.ai.ragagent.service.JobService;
 import com.bonitasoft.ai.ragagent.service.RagService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * RAG Agent REST Controller
@@ -24,6 +37,11 @@ import java.util.Map;
 public class AgentController {
 
     private final RagService ragService;
+    private final DocumentIngestionService ingestionService;
+    private final JobService jobService;
+
+    @Value("${rag.batch.max-size:100}")
+    private int maxBatchSize;
 
     /**
      * Health check endpoint
@@ -45,14 +63,9 @@ public class AgentController {
             log.info("Received request for task: {}", request.getTask());
 
             // Extract question from input data
-            String question = (String) request.getInputData().get("question");
-            if (question == null || question.isEmpty()) {
-                return ResponseEntity.badRequest().body(
-                    AgentResponse.builder()
-                        .status("error")
-                        .error("Question is required in input_data")
-                        .build()
-                );
+            String question = question(request);
+            if (question == null) {
+                return ResponseEntity.badRequest().body(missingQuestion());
             }
 
             // Process query
@@ -71,6 +84,143 @@ public class AgentController {
         }
     }
 
+    /**
+     * Batch RAG endpoint.
+     * Answers several requests in one round trip, retrieved together in a single pass over the index.
+     * Responses are returned in the order of the requests; a request without a question gets an error response.
+     */
+    @PostMapping("/run/batch")
+    public ResponseEntity<List<AgentResponse>> runAgentBatch(@RequestBody List<AgentRequest> requests) {
+        log.info("Received batch of {} requests", requests.size());
+
+        if (requests.isEmpty() || requests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest().body(List.of(
+                AgentResponse.builder()
+                    .status("error")
+                    .error("Batch must contain between 1 and " + maxBatchSize + " requests")
+                    .build()
+            ));
+        }
+
+        List<String> questions = new ArrayList<>(requests.size());
+        for (AgentRequest request : requests) {
+            String question = request != null ? question(request) : null;
+            if (question != null) {
+                questions.add(question);
+            }
+        }
+        Iterator<AgentResponse> answers = ragService.processQueries(questions).iterator();
+
+        List<AgentResponse> responses = new ArrayList<>(requests.size());
+        for (AgentRequest request : requests) {
+            String question = request != null ? question(request) : null;
+            responses.add(question != null ? answers.next() : missingQuestion());
+        }
+        return ResponseEntity.ok(responses);
+    }
+
+    /**
+     * Asynchronous RAG endpoint.
+     * Queues the request and answers 202 with a job id right away; the response is then polled
+     * with GET /jobs/{id}, or posted to the optional "callback_url" of the request params, which
+     * must fall under one of the URLs of rag.jobs.callback-allowed-urls.
+     */
+    @PostMapping("/run/async")
+    public ResponseEntity<JobResponse> runAgentAsync(@Valid @RequestBody AgentRequest request) {
+        log.info("Received async request for task: {}", request.getTask());
+
+        String question = question(request);
+        if (question == null) {
+            return ResponseEntity.badRequest().body(jobError("Question is required in input_data"));
+        }
+
+        URI callbackUrl;
+        try {
+            callbackUrl = callbackUrl(request);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(jobError("callback_url must be an http or https URL"));
+        }
+
+        try {
+            JobResponse job = jobService.submit(question, callbackUrl);
+            return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(jobError(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(jobError("Too many pending jobs, retry later"));
+        }
+    }
+
+    /**
+     * State of an asynchronous job, with its response once done
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobResponse> getJob(@PathVariable String id) {
+        JobResponse job = jobService.status(id);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(jobError("Unknown or expired job: " + id));
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Bulk document ingestion.
+     * Accepts a JSON array of documents or newline-delimited JSON, streamed and indexed in batches.
+     */
+    @PostMapping(value = "/documents", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<IngestionResponse> ingestDocuments(InputStream body,
+                                                             @RequestParam(required = false) Integer batchSize)
+            throws IOException {
+        IngestionResponse response = ingestionService.ingest(body, batchSize);
+        return "ok".equals(response.getStatus())
+            ? ResponseEntity.ok(response)
+            : ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Delete the documents with an id from the index
+     */
+    @DeleteMapping("/documents/{id}")
+    public ResponseEntity<Void> deleteDocument(@PathVariable String id) {
+        return ingestionService.delete(id)
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+
+    private static String question(AgentRequest request) {
+        Object question = request.getInputData() != null ? request.getInputData().get("question") : null;
+        return question instanceof String text && !text.isEmpty() ? text : null;
+    }
+
+    private static AgentResponse missingQuestion() {
+        return AgentResponse.builder()
+            .status("error")
+            .error("Question is required in input_data")
+            .build();
+    }
+
+    /**
+     * Optional callback URL of an async request, from its "callback_url" param
+     */
+    private static URI callbackUrl(AgentRequest request) {
+        Object callback = request.getParams() != null ? request.getParams().get("callback_url") : null;
+        if (callback == null) {
+            return null;
+        }
+        URI uri = URI.create(callback.toString());
+        if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme())) {
+            throw new IllegalArgumentException("Not an http(s) URL: " + uri);
+        }
+        return uri;
+    }
+
+    private static JobResponse jobError(String error) {
+        return JobResponse.builder()
+            .status("error")
+            .error(error)
+            .build();
+    }
+
     /**
      * Exception handler
      */
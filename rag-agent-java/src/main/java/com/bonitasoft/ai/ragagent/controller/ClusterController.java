@@ -0,0 +1,83 @@
+package com.bonitasoft.ai.ragagent.controller;
+
+import com.bonitasoft.ai.ragagent.model.AgentRequest;
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.model.ShardSearchRequest;
+import com.bonitasoft.ai.ragagent.model.ShardSearchResponse;
+import com.bonitasoft.ai.ragagent.model.TermStatistics;
+import com.bonitasoft.ai.ragagent.service.ClusterService;
+import com.bonitasoft.ai.ragagent.service.ClusterService.ClusterException;
+import com.bonitasoft.ai.ragagent.service.SimpleVectorStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.validation.Valid;
+import java.util.List;
+
+/**
+ * Cluster mode endpoints: the node side, called by a coordinator for the node's shard of the
+ * corpus, and the coordinator side, answering a query from all the nodes
+ */
+@Slf4j
+@RestController
+@RequestMapping("/cluster")
+@RequiredArgsConstructor
+public class ClusterController {
+
+    private final SimpleVectorStore vectorStore;
+    private final ClusterService clusterService;
+
+    /**
+     * Document count and document frequencies of the given terms on this node
+     */
+    @PostMapping("/stats")
+    public TermStatistics stats(@RequestBody List<String> terms) {
+        return vectorStore.termStatistics(terms);
+    }
+
+    /**
+     * Top K documents of this node, scored with the statistics of the whole cluster
+     */
+    @PostMapping("/search")
+    public ShardSearchResponse search(@Valid @RequestBody ShardSearchRequest request) {
+        return ShardSearchResponse.builder()
+            .documentsSearched(vectorStore.size())
+            .results(vectorStore.search(request.getQuestion(), request.getTopK(), request.getStatistics()))
+            .build();
+    }
+
+    /**
+     * Coordinator endpoint: same request and response as POST /run, answered from all the
+     * nodes of rag.cluster.nodes
+     */
+    @PostMapping("/run")
+    public ResponseEntity<AgentResponse> run(@Valid @RequestBody AgentRequest request) {
+        if (!clusterService.enabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error("Cluster mode is disabled: rag.cluster.nodes is empty"));
+        }
+        Object question = request.getInputData().get("question");
+        if (!(question instanceof String text) || text.isEmpty()) {
+            return ResponseEntity.badRequest().body(error("Question is required in input_data"));
+        }
+
+        try {
+            return ResponseEntity.ok(clusterService.processQuery(text));
+        } catch (ClusterException e) {
+            log.error("Cluster query failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(error(e.getMessage()));
+        }
+    }
+
+    private static AgentResponse error(String message) {
+        return AgentResponse.builder()
+            .status("error")
+            .error(message)
+            .build();
+    }
+}
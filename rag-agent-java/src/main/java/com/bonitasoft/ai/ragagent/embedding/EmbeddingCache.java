@@ -0,0 +1,169 @@
+package com.bonitasoft.ai.ragagent.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only file of document embeddings, keyed by the SHA-256 of the embedded text, so
+ * that documents already embedded by a previous run are never sent to the model again.
+ *
+ * Layout: a header (magic, format version, dimension, model fingerprint), then fixed-size
+ * records of a 32-byte key followed by the vector as little-endian floats. Only the offsets
+ * of the records are kept in memory; vectors are read back from the file on lookup. The file
+ * is discarded when it was written by another model.
+ */
+@Slf4j
+public final class EmbeddingCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x52414745; // "RAGE"
+    private static final int FORMAT_VERSION = 1;
+    private static final int KEY_BYTES = 32;
+
+    private final Path path;
+    private final int dimension;
+    private final int recordBytes;
+    private final FileChannel channel;
+    // Guarded by this
+    private final Map<ByteBuffer, Long> offsets = new HashMap<>();
+
+    private EmbeddingCache(Path path, int dimension, FileChannel channel) {
+        this.path = path;
+        this.dimension = dimension;
+        this.recordBytes = KEY_BYTES + dimension * Float.BYTES;
+        this.channel = channel;
+    }
+
+    /**
+     * Open the cache file for a model, creating it, or starting over if it was written by another model
+     */
+    public static EmbeddingCache open(Path path, int dimension, String modelFingerprint) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        EmbeddingCache cache = new EmbeddingCache(path, dimension, channel);
+        try {
+            cache.initialize(header(dimension, modelFingerprint));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Key of a text: its SHA-256
+     */
+    public static ByteBuffer key(String text) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    /**
+     * Cached embedding of a text key, or null
+     */
+    public synchronized float[] get(ByteBuffer key) throws IOException {
+        Long offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(record, offset + KEY_BYTES);
+        float[] vector = new float[dimension];
+        record.flip().asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Append an embedding, unless its key is already cached
+     */
+    public synchronized void put(ByteBuffer key, float[] vector) throws IOException {
+        if (offsets.containsKey(key) || vector.length != dimension) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        record.put(key.duplicate().rewind());
+        record.asFloatBuffer().put(vector);
+        record.rewind();
+
+        long offset = channel.size();
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        offsets.put(key, offset);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void initialize(byte[] header) throws IOException {
+        long size = channel.size();
+        if (size >= header.length) {
+            ByteBuffer existing = ByteBuffer.allocate(header.length);
+            readFully(existing, 0);
+            if (existing.flip().equals(ByteBuffer.wrap(header))) {
+                loadOffsets(header.length, size);
+                return;
+            }
+            log.info("Embedding cache {} was written by another model, starting over", path);
+        }
+        channel.truncate(0);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    private void loadOffsets(long start, long size) throws IOException {
+        // A record cut short by a crash is dropped, and overwritten by the next append
+        long end = start + (size - start) / recordBytes * recordBytes;
+        for (long offset = start; offset < end; offset += recordBytes) {
+            ByteBuffer key = ByteBuffer.allocate(KEY_BYTES);
+            readFully(key, offset);
+            offsets.put(key.flip(), offset);
+        }
+        channel.truncate(end);
+        log.info("Opened embedding cache {} with {} embeddings", path, offsets.size());
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of embedding cache " + path);
+            }
+        }
+    }
+
+    private static byte[] header(int dimension, String modelFingerprint) {
+        byte[] fingerprint = modelFingerprint.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(4 * Integer.BYTES + fingerprint.length)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(dimension)
+            .putInt(fingerprint.length)
+            .put(fingerprint)
+            .array();
+    }
+}
@@ -0,0 +1,19 @@
+package com.bonitasoft.ai.ragagent.embedding;
+
+import java.util.List;
+
+/**
+ * Model turning texts into dense vectors whose cosine similarity reflects their meaning
+ */
+public interface EmbeddingModel extends AutoCloseable {
+
+    int dimension();
+
+    /**
+     * Embed texts in a single inference call, returning unit-length vectors in the same order
+     */
+    List<float[]> embed(List<String> texts);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,183 @@
+package com.bonitasoft.ai.ragagent.embedding;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OnnxValue;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sentence-transformer model exported to ONNX, run in-process on CPU by ONNX Runtime.
+ *
+ * The model directory holds {@code model.onnx} and the {@code vocab.txt} of its WordPiece
+ * tokenizer, e.g. all-MiniLM-L6-v2. Texts of a batch are padded to the longest one; the token
+ * embeddings are mean-pooled over the attention mask, unless the model already outputs a
+ * {@code sentence_embedding}, and normalized to unit length.
+ */
+@Slf4j
+public final class OnnxEmbeddingModel implements EmbeddingModel {
+
+    private static final String SENTENCE_EMBEDDING = "sentence_embedding";
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final WordPieceTokenizer tokenizer;
+    private final int maxTokens;
+    private final boolean hasTokenTypes;
+    private final int dimension;
+
+    private OnnxEmbeddingModel(OrtEnvironment environment, OrtSession session, WordPieceTokenizer tokenizer,
+                               int maxTokens) throws OrtException {
+        this.environment = environment;
+        this.session = session;
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+        this.hasTokenTypes = session.getInputNames().contains("token_type_ids");
+
+        String output = session.getOutputNames().contains(SENTENCE_EMBEDDING)
+            ? SENTENCE_EMBEDDING : session.getOutputNames().iterator().next();
+        long[] shape = ((TensorInfo) session.getOutputInfo().get(output).getInfo()).getShape();
+        this.dimension = (int) shape[shape.length - 1];
+    }
+
+    /**
+     * Load the model and vocabulary of a directory
+     *
+     * @param intraOpThreads threads used by a single inference, 0 for the ONNX Runtime default
+     */
+    public static OnnxEmbeddingModel load(Path directory, int maxTokens, int intraOpThreads) throws IOException {
+        Path modelFile = directory.resolve("model.onnx");
+        Path vocabularyFile = directory.resolve("vocab.txt");
+        if (!Files.isRegularFile(modelFile) || !Files.isRegularFile(vocabularyFile)) {
+            throw new IOException("Expected model.onnx and vocab.txt in " + directory);
+        }
+
+        WordPieceTokenizer tokenizer = WordPieceTokenizer.load(vocabularyFile);
+        OrtEnvironment environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            if (intraOpThreads > 0) {
+                options.setIntraOpNumThreads(intraOpThreads);
+            }
+            OrtSession session = environment.createSession(modelFile.toString(), options);
+            OnnxEmbeddingModel model = new OnnxEmbeddingModel(environment, session, tokenizer, maxTokens);
+            log.info("Loaded embedding model {} ({} dimensions, inputs {})",
+                modelFile, model.dimension, session.getInputNames());
+            return model;
+        } catch (OrtException e) {
+            throw new IOException("Could not load embedding model " + modelFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+
+        int[][] tokens = new int[texts.size()][];
+        int length = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokenizer.encode(texts.get(i), maxTokens);
+            length = Math.max(length, tokens[i].length);
+        }
+
+        // Pad every text to the longest one of the batch
+        int batch = tokens.length;
+        long[] inputIds = new long[batch * length];
+        long[] attentionMask = new long[batch * length];
+        for (int i = 0; i < batch; i++) {
+            for (int t = 0; t < tokens[i].length; t++) {
+                inputIds[i * length + t] = tokens[i][t];
+                attentionMask[i * length + t] = 1;
+            }
+        }
+
+        long[] shape = {batch, length};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(inputIds), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, LongBuffer.wrap(attentionMask), shape));
+            if (hasTokenTypes) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(new long[batch * length]), shape));
+            }
+
+            try (OrtSession.Result result = session.run(inputs)) {
+                OnnxValue sentences = result.get(SENTENCE_EMBEDDING).orElse(null);
+                if (sentences != null) {
+                    return normalized((float[][]) sentences.getValue());
+                }
+                return normalized(meanPool((float[][][]) result.get(0).getValue(), tokens));
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Embedding inference failed: " + e.getMessage(), e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    /**
+     * Average of the token embeddings of each text, padding excluded
+     */
+    private static float[][] meanPool(float[][][] tokenEmbeddings, int[][] tokens) {
+        float[][] pooled = new float[tokens.length][];
+        for (int i = 0; i < tokens.length; i++) {
+            int hidden = tokenEmbeddings[i][0].length;
+            float[] sum = new float[hidden];
+            for (int t = 0; t < tokens[i].length; t++) {
+                float[] token = tokenEmbeddings[i][t];
+                for (int h = 0; h < hidden; h++) {
+                    sum[h] += token[h];
+                }
+            }
+            for (int h = 0; h < hidden; h++) {
+                sum[h] /= tokens[i].length;
+            }
+            pooled[i] = sum;
+        }
+        return pooled;
+    }
+
+    private static List<float[]> normalized(float[][] vectors) {
+        List<float[]> result = new ArrayList<>(vectors.length);
+        for (float[] vector : vectors) {
+            double squaredNorm = 0.0;
+            for (float value : vector) {
+                squaredNorm += value * value;
+            }
+            if (squaredNorm > 0) {
+                float scale = (float) (1.0 / Math.sqrt(squaredNorm));
+                for (int h = 0; h < vector.length; h++) {
+                    vector[h] *= scale;
+                }
+            }
+            result.add(vector);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.close();
+        } catch (OrtException e) {
+            log.warn("Error closing embedding model: {}", e.getMessage());
+        }
+    }
+}
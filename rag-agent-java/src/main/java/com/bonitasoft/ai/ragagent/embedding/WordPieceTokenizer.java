@@ -0,0 +1,169 @@
+package com.bonitasoft.ai.ragagent.embedding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BERT uncased tokenizer, as used by sentence-transformer models: text is cleaned, lowercased,
+ * stripped of accents and split on whitespace and punctuation, then each word is split into the
+ * longest pieces found in the vocabulary, continuation pieces being prefixed with {@code ##}.
+ */
+public final class WordPieceTokenizer {
+
+    private static final int MAX_WORD_LENGTH = 100;
+
+    private final Map<String, Integer> vocabulary;
+    private final int unknownId;
+    private final int classId;
+    private final int separatorId;
+
+    private WordPieceTokenizer(Map<String, Integer> vocabulary) {
+        this.vocabulary = vocabulary;
+        this.unknownId = requiredId("[UNK]");
+        this.classId = requiredId("[CLS]");
+        this.separatorId = requiredId("[SEP]");
+    }
+
+    /**
+     * Load a vocab.txt file, one token per line, the line number being the token id
+     */
+    public static WordPieceTokenizer load(Path vocabularyFile) throws IOException {
+        List<String> lines = Files.readAllLines(vocabularyFile, StandardCharsets.UTF_8);
+        Map<String, Integer> vocabulary = new HashMap<>(lines.size() * 2);
+        for (int id = 0; id < lines.size(); id++) {
+            vocabulary.putIfAbsent(lines.get(id), id);
+        }
+        return new WordPieceTokenizer(vocabulary);
+    }
+
+    /**
+     * Token ids of a text, between [CLS] and [SEP], truncated to maxTokens in total
+     */
+    public int[] encode(String text, int maxTokens) {
+        List<Integer> ids = new ArrayList<>();
+        ids.add(classId);
+        for (String word : basicTokens(text)) {
+            if (!addWordPieces(word, ids, maxTokens - 1)) {
+                break;
+            }
+        }
+        ids.add(separatorId);
+
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Append the pieces of a word, returning false once the limit is reached
+     */
+    private boolean addWordPieces(String word, List<Integer> ids, int limit) {
+        if (word.length() > MAX_WORD_LENGTH) {
+            return add(ids, unknownId, limit);
+        }
+
+        int mark = ids.size();
+        int start = 0;
+        while (start < word.length()) {
+            int end = word.length();
+            Integer pieceId = null;
+            while (start < end) {
+                String piece = start > 0 ? "##" + word.substring(start, end) : word.substring(start, end);
+                pieceId = vocabulary.get(piece);
+                if (pieceId != null) {
+                    break;
+                }
+                end--;
+            }
+            if (pieceId == null) {
+                // The whole word is unknown, not just the piece
+                ids.subList(mark, ids.size()).clear();
+                return add(ids, unknownId, limit);
+            }
+            if (!add(ids, pieceId, limit)) {
+                return false;
+            }
+            start = end;
+        }
+        return true;
+    }
+
+    private static boolean add(List<Integer> ids, int id, int limit) {
+        if (ids.size() >= limit) {
+            return false;
+        }
+        ids.add(id);
+        return true;
+    }
+
+    /**
+     * Clean, lowercase and strip accents, then split on whitespace and around punctuation
+     * and CJK characters
+     */
+    private static List<String> basicTokens(String text) {
+        String normalized = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD);
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < normalized.length(); ) {
+            int c = normalized.codePointAt(i);
+            i += Character.charCount(c);
+
+            if (c == 0 || c == 0xFFFD || Character.getType(c) == Character.NON_SPACING_MARK
+                    || (Character.isISOControl(c) && !Character.isWhitespace(c))) {
+                continue;
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                flush(word, tokens);
+            } else if (isPunctuation(c) || isCjk(c)) {
+                flush(word, tokens);
+                tokens.add(new String(Character.toChars(c)));
+            } else {
+                word.appendCodePoint(c);
+            }
+        }
+        flush(word, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isPunctuation(int c) {
+        // All non-alphanumeric ASCII characters count as punctuation, like "$" or "^"
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION
+            || type == Character.START_PUNCTUATION || type == Character.END_PUNCTUATION
+            || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+            || type == Character.OTHER_PUNCTUATION;
+    }
+
+    private static boolean isCjk(int c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0x20000 && c <= 0x2A6DF)
+            || (c >= 0x2A700 && c <= 0x2B81F) || (c >= 0x2B820 && c <= 0x2CEAF) || (c >= 0xF900 && c <= 0xFAFF)
+            || (c >= 0x2F800 && c <= 0x2FA1F);
+    }
+
+    private int requiredId(String token) {
+        Integer id = vocabulary.get(token);
+        if (id == null) {
+            throw new IllegalArgumentException("Vocabulary has no " + token + " token");
+        }
+        return id;
+    }
+}
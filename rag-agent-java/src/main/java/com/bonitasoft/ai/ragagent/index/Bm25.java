@@ -0,0 +1,109 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * Parameters of Okapi BM25 scoring.
+ *
+ * A document's score for a query term is {@code idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / avgLength))}:
+ * {@code k1} bounds how much repeated occurrences of a term add to the score, and {@code b}
+ * how much the weight of an occurrence decreases in longer documents.
+ */
+public final class Bm25 {
+
+    private final float k1;
+    private final float b;
+
+    public Bm25(float k1, float b) {
+        if (!(k1 >= 0)) {
+            throw new IllegalArgumentException("BM25 k1 must not be negative: " + k1);
+        }
+        if (!(b >= 0 && b <= 1)) {
+            throw new IllegalArgumentException("BM25 b must be between 0 and 1: " + b);
+        }
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    public float k1() {
+        return k1;
+    }
+
+    public float b() {
+        return b;
+    }
+
+    /**
+     * BM25 inverse document frequency of a term appearing in documentCount documents; never negative
+     */
+    public static double inverseDocumentFrequency(long totalDocuments, long documentCount) {
+        return Math.log(1 + (totalDocuments - documentCount + 0.5) / (documentCount + 0.5));
+    }
+
+    /**
+     * Score of a term occurring {@code count} times in a document, before IDF weighting,
+     * given the document's {@link Bm25Weights length norm}
+     */
+    double termScore(int count, float lengthNorm) {
+        return count * (k1 + 1.0) / (count + lengthNorm);
+    }
+
+    /**
+     * Compute the weights of a corpus of passages: IDF by term id, then by segment the length norm
+     * of each passage and the highest score of each of its posting terms
+     */
+    Bm25Weights weigh(List<Segment> segments, int[] documentFrequency, int totalPassages) {
+        float[] idf = new float[documentFrequency.length];
+        for (int termId = 0; termId < idf.length; termId++) {
+            idf[termId] = (float) inverseDocumentFrequency(totalPassages, documentFrequency[termId]);
+        }
+
+        // Passage lengths are the sums of their raw term counts; the average is over live passages
+        float[][] lengthNorms = new float[segments.size()][];
+        double totalLength = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            VectorArena vectors = segment.vectors();
+            float[] lengths = new float[segment.size()];
+            for (int ordinal = 0; ordinal < lengths.length; ordinal++) {
+                float length = 0;
+                for (int i = vectors.offset(ordinal), end = vectors.offset(ordinal + 1); i < end; i++) {
+                    length += vectors.valueAt(i);
+                }
+                lengths[ordinal] = length;
+                if (!segment.isDeleted(ordinal)) {
+                    totalLength += length;
+                }
+            }
+            lengthNorms[s] = lengths;
+        }
+        double averageLength = totalPassages > 0 ? totalLength / totalPassages : 0;
+        for (float[] norms : lengthNorms) {
+            for (int ordinal = 0; ordinal < norms.length; ordinal++) {
+                double relativeLength = averageLength > 0 ? norms[ordinal] / averageLength : 1;
+                norms[ordinal] = (float) (k1 * (1 - b + b * relativeLength));
+            }
+        }
+
+        // Rounded up, so that a score computed in double never exceeds its bound
+        float[][] maxTermScores = new float[segments.size()][];
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            IntBuffer docs = segment.postingDocs();
+            IntBuffer counts = segment.postingCounts();
+            float[] norms = lengthNorms[s];
+            float[] maxScores = new float[segment.terms().limit()];
+            for (int index = 0; index < maxScores.length; index++) {
+                double max = 0;
+                for (int p = segment.postingStart(index), end = segment.postingStart(index + 1); p < end; p++) {
+                    max = Math.max(max, termScore(counts.get(p), norms[docs.get(p)]));
+                }
+                maxScores[index] = Math.nextUp((float) max);
+            }
+            maxTermScores[s] = maxScores;
+        }
+
+        return new Bm25Weights(this, idf, lengthNorms, maxTermScores);
+    }
+}
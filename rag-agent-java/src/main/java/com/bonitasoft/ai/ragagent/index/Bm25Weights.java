@@ -0,0 +1,164 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * BM25 weights of one version of the corpus, computed once per snapshot by {@link Bm25#weigh}:
+ * the IDF of each term, the length norm {@code k1 * (1 - b + b * length / avgLength)} of each
+ * passage, and for each term of each segment an upper bound of its score in any of
+ * the segment's passages, used to skip passages that cannot make the top K.
+ */
+public final class Bm25Weights {
+
+    private final Bm25 parameters;
+    // By term id
+    private final float[] idf;
+    // By segment, then by local passage ordinal
+    private final float[][] lengthNorms;
+    // By segment, then by index among the segment's posting terms; before IDF weighting
+    private final float[][] maxTermScores;
+
+    Bm25Weights(Bm25 parameters, float[] idf, float[][] lengthNorms, float[][] maxTermScores) {
+        this.parameters = parameters;
+        this.idf = idf;
+        this.lengthNorms = lengthNorms;
+        this.maxTermScores = maxTermScores;
+    }
+
+    public Bm25 parameters() {
+        return parameters;
+    }
+
+    public float idf(int termId) {
+        return idf[termId];
+    }
+
+    /**
+     * Score, with MaxScore dynamic pruning, the passages of local ordinals {@code [first, end)}
+     * of a segment that contain at least one term of the query, whose values are the weights
+     * of its terms (their IDF times their count in the query). Passages are passed to the
+     * collector in increasing ordinal order, when their score exceeds its threshold.
+     *
+     * Query terms are ordered by the upper bound of their score in the segment. The terms
+     * with the lowest bounds, whose bounds add up to at most the threshold, are non-essential:
+     * a document containing only them cannot be collected, so their postings are not iterated,
+     * only searched for the documents found in the postings of the essential terms. A document
+     * is dropped as soon as its score plus the bounds of the terms left to check cannot exceed
+     * the threshold. As the collector fills up, its threshold rises and more terms become
+     * non-essential; once all are, the rest of the segment is skipped. Passages of deleted
+     * documents are skipped; the bounds, computed with them, stay valid for the others.
+     */
+    public void search(int s, Segment segment, int first, int end, SparseVector query, ScoreCollector collector) {
+        IntBuffer docs = segment.postingDocs();
+        IntBuffer counts = segment.postingCounts();
+        float[] norms = lengthNorms[s];
+        float[] maxScores = maxTermScores[s];
+
+        // Posting cursors of the query terms found in the range, by increasing bound
+        int[] position = new int[query.size()];
+        int[] limit = new int[query.size()];
+        double[] weight = new double[query.size()];
+        double[] bound = new double[query.size()];
+        int terms = 0;
+        for (int j = 0; j < query.size(); j++) {
+            int index = segment.indexOfTerm(query.termId(j));
+            if (index < 0 || query.value(j) <= 0) {
+                continue;
+            }
+            int postingsEnd = segment.postingStart(index + 1);
+            int start = segment.firstPosting(segment.postingStart(index), postingsEnd, first);
+            int stop = segment.firstPosting(start, postingsEnd, end);
+            if (start == stop) {
+                continue;
+            }
+            double termBound = query.value(j) * maxScores[index];
+            int i = terms++;
+            for (; i > 0 && bound[i - 1] > termBound; i--) {
+                position[i] = position[i - 1];
+                limit[i] = limit[i - 1];
+                weight[i] = weight[i - 1];
+                bound[i] = bound[i - 1];
+            }
+            position[i] = start;
+            limit[i] = stop;
+            weight[i] = query.value(j);
+            bound[i] = termBound;
+        }
+
+        // Highest score a document can get from the terms up to each cursor
+        double[] cumulativeBound = new double[terms];
+        for (int i = 0; i < terms; i++) {
+            cumulativeBound[i] = (i > 0 ? cumulativeBound[i - 1] : 0) + bound[i];
+        }
+
+        // Score of each term in the current document, added up in term order once the document
+        // is known to be collected: the order pruning adds them in depends on the threshold, and
+        // so would the rounding of the sum, ranking tied documents differently from one shard
+        // split to another
+        double[] termScores = new double[terms];
+        int essential = 0;
+        while (true) {
+            double threshold = collector.threshold();
+            while (essential < terms && cumulativeBound[essential] <= threshold) {
+                essential++;
+            }
+            if (essential == terms) {
+                return;
+            }
+
+            // Next document of the essential terms
+            int ordinal = Integer.MAX_VALUE;
+            for (int i = essential; i < terms; i++) {
+                if (position[i] < limit[i]) {
+                    ordinal = Math.min(ordinal, docs.get(position[i]));
+                }
+            }
+            if (ordinal == Integer.MAX_VALUE) {
+                return;
+            }
+            if (segment.isDeleted(ordinal)) {
+                for (int i = essential; i < terms; i++) {
+                    if (position[i] < limit[i] && docs.get(position[i]) == ordinal) {
+                        position[i]++;
+                    }
+                }
+                continue;
+            }
+
+            Arrays.fill(termScores, 0);
+            double score = 0;
+            for (int i = essential; i < terms; i++) {
+                if (position[i] < limit[i] && docs.get(position[i]) == ordinal) {
+                    termScores[i] = weight[i] * parameters.termScore(counts.get(position[i]), norms[ordinal]);
+                    score += termScores[i];
+                    position[i]++;
+                }
+            }
+
+            // Non-essential terms, best bound first, while the document can still make it
+            boolean competitive = true;
+            for (int i = essential - 1; i >= 0; i--) {
+                if (score + cumulativeBound[i] <= threshold) {
+                    competitive = false;
+                    break;
+                }
+                position[i] = segment.firstPosting(position[i], limit[i], ordinal);
+                if (position[i] < limit[i] && docs.get(position[i]) == ordinal) {
+                    termScores[i] = weight[i] * parameters.termScore(counts.get(position[i]), norms[ordinal]);
+                    score += termScores[i];
+                    position[i]++;
+                }
+            }
+            if (competitive && score > threshold) {
+                score = 0;
+                for (double termScore : termScores) {
+                    score += termScore;
+                }
+                if (score > threshold) {
+                    collector.collect(ordinal, score);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Append-only storage for unit-length dense vectors, laid out contiguously in pages of
+ * {@value #PAGE_SIZE} vectors. Pages are never moved once allocated, so a single writer can
+ * append while readers access the vectors published before.
+ */
+final class DenseVectors {
+
+    static final int PAGE_SIZE = 1 << 10;
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final int dimension;
+    private final ScoringKernel kernel = ScoringKernel.get();
+    private volatile float[][] pages = new float[0][];
+    // Written last by add, so vectors below it are fully visible to readers
+    private volatile int size;
+
+    DenseVectors(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimension must be positive: " + dimension);
+        }
+        this.dimension = dimension;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append a normalized copy of the vector and return its id. Single writer only.
+     */
+    int add(float[] vector) {
+        checkDimension(vector);
+        int id = size;
+        int page = id >>> PAGE_SHIFT;
+        float[][] current = pages;
+        if (page == current.length) {
+            current = Arrays.copyOf(current, page + 1);
+            current[page] = new float[PAGE_SIZE * dimension];
+            pages = current;
+        }
+
+        float scale = inverseNorm(vector);
+        int offset = (id & PAGE_MASK) * dimension;
+        float[] target = current[page];
+        for (int i = 0; i < dimension; i++) {
+            target[offset + i] = vector[i] * scale;
+        }
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Normalized copy of a query vector
+     */
+    float[] normalize(float[] vector) {
+        checkDimension(vector);
+        float scale = inverseNorm(vector);
+        float[] normalized = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * Copy of a stored vector
+     */
+    float[] get(int id) {
+        int offset = (id & PAGE_MASK) * dimension;
+        return Arrays.copyOfRange(pages[id >>> PAGE_SHIFT], offset, offset + dimension);
+    }
+
+    /**
+     * Dot product of a stored vector with a normalized query, i.e. their cosine similarity
+     */
+    float dot(int id, float[] query) {
+        return kernel.dot(pages[id >>> PAGE_SHIFT], (id & PAGE_MASK) * dimension, query, 0, dimension);
+    }
+
+    /**
+     * Dot product of two stored vectors
+     */
+    float dot(int a, int b) {
+        float[][] current = pages;
+        return kernel.dot(current[a >>> PAGE_SHIFT], (a & PAGE_MASK) * dimension,
+            current[b >>> PAGE_SHIFT], (b & PAGE_MASK) * dimension, dimension);
+    }
+
+    /**
+     * Bytes allocated by the pages
+     */
+    long bytesUsed() {
+        return (long) pages.length * PAGE_SIZE * dimension * Float.BYTES;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension + ", got " + vector.length);
+        }
+    }
+
+    private static float inverseNorm(float[] vector) {
+        double squaredNorm = 0.0;
+        for (float value : vector) {
+            squaredNorm += value * value;
+        }
+        return squaredNorm > 0 ? (float) (1.0 / Math.sqrt(squaredNorm)) : 0f;
+    }
+}
@@ -0,0 +1,56 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * Exact {@link VectorIndex}: every vector is scored against the query and the best k are kept
+ * in a bounded heap. Search time is linear in the number of vectors; this is the reference the
+ * approximate indexes are measured against.
+ */
+final class FlatVectorIndex implements VectorIndex {
+
+    private final DenseVectors vectors;
+
+    FlatVectorIndex(int dimension) {
+        this.vectors = new DenseVectors(dimension);
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    @Override
+    public int size() {
+        return vectors.size();
+    }
+
+    @Override
+    public long bytesUsed() {
+        return vectors.bytesUsed();
+    }
+
+    @Override
+    public synchronized int add(float[] vector) {
+        return vectors.add(vector);
+    }
+
+    @Override
+    public Neighbors search(float[] query, int k) {
+        int size = vectors.size();
+        if (size == 0 || k <= 0) {
+            return Neighbors.EMPTY;
+        }
+
+        float[] normalized = vectors.normalize(query);
+        ScoreHeap heap = new ScoreHeap(k + 1);
+        for (int id = 0; id < size; id++) {
+            float score = vectors.dot(id, normalized);
+            if (heap.size() < k) {
+                heap.push(id, score);
+            } else if (score > heap.peekScore()) {
+                heap.pop();
+                heap.push(id, score);
+            }
+        }
+        return Neighbors.drain(heap, k);
+    }
+}
@@ -0,0 +1,44 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Vector arena storing entries in parallel primitive arrays, scored with the {@link ScoringKernel}
+ */
+class HeapVectorArena extends VectorArena {
+
+    private final ScoringKernel kernel = ScoringKernel.get();
+    private int[] termIds = new int[1024];
+    private float[] values = new float[1024];
+
+    @Override
+    public double dot(int slot, SparseVector query) {
+        return kernel.sparseDot(termIds, values, offset(slot), offset(slot + 1),
+            query.termIds(), query.values(), query.size());
+    }
+
+    @Override
+    protected void ensureEntryCapacity(int entries) {
+        if (entries > termIds.length) {
+            int capacity = Math.max(entries, termIds.length << 1);
+            termIds = Arrays.copyOf(termIds, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    @Override
+    protected void put(int position, int termId, float value) {
+        termIds[position] = termId;
+        values[position] = value;
+    }
+
+    @Override
+    protected int termIdAt(int position) {
+        return termIds[position];
+    }
+
+    @Override
+    protected float valueAt(int position) {
+        return values[position];
+    }
+}
@@ -0,0 +1,327 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Approximate {@link VectorIndex} on a Hierarchical Navigable Small World graph
+ * (Malkov and Yashunin, 2016).
+ *
+ * Each vector is a node on layer 0 and, with exponentially decreasing probability, on the
+ * layers above, where it is linked to up to {@code m} close nodes ({@code 2m} on layer 0),
+ * chosen with the neighbour selection heuristic so that links spread in all directions.
+ * A search descends greedily from the single node of the top layer, then explores layer 0
+ * with a beam of {@code efSearch} candidates: latency is roughly logarithmic in the number of
+ * vectors, and recall is traded for speed with {@code efSearch}.
+ *
+ * Concurrency: additions are serialized. Searches take no lock: a node's vector and links are
+ * published before it is linked from the rest of the graph, and every link list is replaced
+ * as a whole, never modified in place, so a search follows either the old or the new list.
+ */
+final class HnswVectorIndex implements VectorIndex {
+
+    private static final int[] NO_LINKS = new int[0];
+    // Approximate size of a node without its links: the node, its link array and their headers
+    private static final int NODE_BYTES = 64;
+
+    private final int m;
+    private final int maxLinksLayer0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final DenseVectors vectors;
+
+    // Writer state, guarded by this; seeded so that the same vectors always build the same graph
+    private final SplittableRandom random = new SplittableRandom(42);
+    private long linkCount;
+
+    // Indexed by vector id; replaced by a larger copy when full
+    private volatile Node[] nodes = new Node[16];
+    private volatile EntryPoint entryPoint;
+
+    HnswVectorIndex(int dimension, int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: m=" + m
+                + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.m = m;
+        this.maxLinksLayer0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.vectors = new DenseVectors(dimension);
+    }
+
+    @Override
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    @Override
+    public int size() {
+        return vectors.size();
+    }
+
+    @Override
+    public synchronized long bytesUsed() {
+        return vectors.bytesUsed() + (long) nodes.length * Integer.BYTES
+            + (long) vectors.size() * NODE_BYTES + linkCount * Integer.BYTES;
+    }
+
+    @Override
+    public synchronized int add(float[] vector) {
+        int id = vectors.add(vector);
+        int level = randomLevel();
+        Node node = new Node(level);
+        Node[] current = nodes;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = node;
+        nodes = current;
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            entryPoint = new EntryPoint(id, level);
+            return id;
+        }
+
+        // Descend to the top layer of the new node, then link it on each layer down to 0
+        float[] query = vectors.get(id);
+        int closest = entry.id;
+        for (int layer = entry.level; layer > level; layer--) {
+            closest = greedyClosest(query, closest, layer);
+        }
+        int[] entries = {closest};
+        for (int layer = Math.min(level, entry.level); layer >= 0; layer--) {
+            ScoreHeap candidates = searchLayer(query, entries, efConstruction, layer);
+            int[] links = selectNeighbors(id, sortedBestFirst(candidates), m);
+            node.links.set(layer, links);
+            linkCount += links.length;
+            for (int neighbor : links) {
+                link(neighbor, id, layer);
+            }
+            entries = links.length > 0 ? links : entries;
+        }
+
+        if (level > entry.level) {
+            entryPoint = new EntryPoint(id, level);
+        }
+        return id;
+    }
+
+    @Override
+    public Neighbors search(float[] query, int k) {
+        EntryPoint entry = entryPoint;
+        if (entry == null || k <= 0) {
+            return Neighbors.EMPTY;
+        }
+
+        float[] normalized = vectors.normalize(query);
+        int closest = entry.id;
+        for (int layer = entry.level; layer > 0; layer--) {
+            closest = greedyClosest(normalized, closest, layer);
+        }
+        return Neighbors.drain(searchLayer(normalized, new int[]{closest}, Math.max(efSearch, k), 0), k);
+    }
+
+    /**
+     * Beam search of one layer from the entry nodes, returning the best ef nodes found
+     * in a min-heap (worst at the head)
+     */
+    private ScoreHeap searchLayer(float[] query, int[] entries, int ef, int layer) {
+        IntSet visited = new IntSet(ef * m);
+        // Max-heap of the nodes to expand, through negated scores
+        ScoreHeap candidates = new ScoreHeap(ef);
+        ScoreHeap results = new ScoreHeap(ef + 1);
+        for (int entry : entries) {
+            if (visited.add(entry)) {
+                float score = vectors.dot(entry, query);
+                candidates.push(entry, -score);
+                results.push(entry, score);
+            }
+        }
+        while (results.size() > ef) {
+            results.pop();
+        }
+
+        while (!candidates.isEmpty()) {
+            int candidate = candidates.peekId();
+            float candidateScore = -candidates.peekScore();
+            candidates.pop();
+            // Every remaining candidate is worse than all the results kept
+            if (results.size() >= ef && candidateScore < results.peekScore()) {
+                break;
+            }
+
+            for (int neighbor : node(candidate).links.get(layer)) {
+                if (!visited.add(neighbor)) {
+                    continue;
+                }
+                float score = vectors.dot(neighbor, query);
+                if (results.size() < ef || score > results.peekScore()) {
+                    candidates.push(neighbor, -score);
+                    results.push(neighbor, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Follow links on a layer for as long as they lead closer to the query
+     */
+    private int greedyClosest(float[] query, int start, int layer) {
+        int closest = start;
+        float closestScore = vectors.dot(start, query);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : node(closest).links.get(layer)) {
+                float score = vectors.dot(neighbor, query);
+                if (score > closestScore) {
+                    closest = neighbor;
+                    closestScore = score;
+                    improved = true;
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Add a link from an existing node to the new one, pruning the node's links when it
+     * already has as many as allowed on this layer
+     */
+    private void link(int from, int to, int layer) {
+        Node node = node(from);
+        int[] links = node.links.get(layer);
+        int maxLinks = layer == 0 ? maxLinksLayer0 : m;
+        if (links.length < maxLinks) {
+            int[] extended = Arrays.copyOf(links, links.length + 1);
+            extended[links.length] = to;
+            node.links.set(layer, extended);
+            linkCount++;
+            return;
+        }
+
+        ScoreHeap candidates = new ScoreHeap(links.length + 1);
+        for (int link : links) {
+            candidates.push(link, vectors.dot(from, link));
+        }
+        candidates.push(to, vectors.dot(from, to));
+        int[] pruned = selectNeighbors(from, sortedBestFirst(candidates), maxLinks);
+        node.links.set(layer, pruned);
+        linkCount += pruned.length - links.length;
+    }
+
+    /**
+     * Neighbour selection heuristic: take candidates best first, skipping those closer to an
+     * already selected neighbour than to the base node, as they are reachable through it
+     */
+    private int[] selectNeighbors(int base, Neighbors candidates, int maxLinks) {
+        int[] selected = new int[Math.min(maxLinks, candidates.size())];
+        int count = 0;
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            int candidate = candidates.id(i);
+            if (candidate == base) {
+                continue;
+            }
+            float score = candidates.score(i);
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (vectors.dot(candidate, selected[j]) > score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private static Neighbors sortedBestFirst(ScoreHeap heap) {
+        return Neighbors.drain(heap, heap.size());
+    }
+
+    private Node node(int id) {
+        // Re-read the array: a link may point to a node added after a previous read
+        return nodes[id];
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private static final class Node {
+        // Links by layer, from 0 to the node's level
+        final AtomicReferenceArray<int[]> links;
+
+        Node(int level) {
+            links = new AtomicReferenceArray<>(level + 1);
+            for (int layer = 0; layer <= level; layer++) {
+                links.set(layer, NO_LINKS);
+            }
+        }
+    }
+
+    private static final class EntryPoint {
+        final int id;
+        final int level;
+
+        EntryPoint(int id, int level) {
+            this.id = id;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Open-addressing set of non-negative ints, for the nodes visited by a search
+     */
+    private static final class IntSet {
+        private int[] table;
+        private int size;
+
+        IntSet(int expected) {
+            table = new int[Integer.highestOneBit(Math.max(expected, 8) * 2) * 2];
+            Arrays.fill(table, -1);
+        }
+
+        /**
+         * Add a value, returning false if it was already present
+         */
+        boolean add(int value) {
+            int mask = table.length - 1;
+            int slot = (value * 0x9E3779B9) >>> 1 & mask;
+            while (table[slot] != -1) {
+                if (table[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+            if (++size * 2 > table.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, -1);
+            size = 0;
+            for (int value : old) {
+                if (value != -1) {
+                    add(value);
+                }
+            }
+        }
+    }
+}
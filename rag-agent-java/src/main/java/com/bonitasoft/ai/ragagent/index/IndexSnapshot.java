@@ -0,0 +1,332 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, consistent view of the whole index.
+ *
+ * A snapshot is built by the writer and published as a whole; readers holding a snapshot are
+ * never affected by later changes. Its IDF weights and per-passage normalization factors,
+ * which depend on every passage of its version of the corpus, are not computed when it is
+ * published, so that adding a document stays incremental: they are computed once, on first
+ * use by a search or ahead of it by {@link #weigh()}, and shared by all its readers. With BM25
+ * scoring, its {@link Bm25Weights} are computed the same way.
+ *
+ * Deleting documents only tombstones them in their segments and adjusts the document
+ * frequencies: {@link #withDeletions} keeps the weights of the previous snapshot if they were
+ * computed, stale until a new snapshot is built by {@link #of}, as the index compaction does.
+ */
+public final class IndexSnapshot {
+
+    private final long version;
+    private final TermDictionary dictionary;
+    private final List<Segment> segments;
+    // Global ordinal of the first passage, and index of the first document, of each segment
+    private final int[] segmentBases;
+    private final int[] documentBases;
+    private final int totalPassages;
+    private final int totalDocuments;
+    private final int livePassages;
+    private final int liveDocuments;
+    // By term id; term ids beyond their length were added after this snapshot
+    private final int[] documentFrequency;
+    // Null unless scored with BM25
+    private final Bm25 bm25Parameters;
+    // Computed on first use, unless restored or inherited
+    private volatile TfIdfWeights tfIdf;
+    private volatile Bm25Weights bm25;
+    private final Object weightsLock = new Object();
+    // Whether documents were deleted since the inherited weights were computed
+    private final boolean staleWeights;
+
+    private IndexSnapshot(long version, TermDictionary dictionary, List<Segment> segments, int[] documentFrequency,
+                          Bm25 bm25Parameters, TfIdfWeights tfIdf, Bm25Weights bm25, boolean staleWeights) {
+        this.version = version;
+        this.dictionary = dictionary;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.documentFrequency = documentFrequency;
+        this.bm25Parameters = bm25Parameters;
+        this.tfIdf = tfIdf;
+        this.bm25 = bm25;
+        this.staleWeights = staleWeights;
+
+        this.segmentBases = new int[segments.size()];
+        this.documentBases = new int[segments.size()];
+        int passages = 0;
+        int documents = 0;
+        int deletedPassages = 0;
+        int deletedDocuments = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            segmentBases[s] = passages;
+            documentBases[s] = documents;
+            passages += segment.size();
+            documents += segment.documentCount();
+            deletedPassages += segment.deletedPassageCount();
+            deletedDocuments += segment.deletedDocumentCount();
+        }
+        this.totalPassages = passages;
+        this.totalDocuments = documents;
+        this.livePassages = passages - deletedPassages;
+        this.liveDocuments = documents - deletedDocuments;
+    }
+
+    public static IndexSnapshot empty(long version, TermDictionary dictionary) {
+        return new IndexSnapshot(version, dictionary, List.of(), new int[0], null,
+                new TfIdfWeights(new float[0], new float[0][]), null, false);
+    }
+
+    /**
+     * Build a snapshot over segments, scored with BM25 with the given parameters or with
+     * TF-IDF if null. Its weights are computed on first use.
+     */
+    public static IndexSnapshot of(long version, TermDictionary dictionary, List<Segment> segments,
+                                   int[] documentFrequency, Bm25 bm25Parameters) {
+        return new IndexSnapshot(version, dictionary, segments, documentFrequency, bm25Parameters, null, null, false);
+    }
+
+    /**
+     * Reassemble a snapshot whose TF-IDF weights were already computed, as stored in a {@link SegmentFile}
+     */
+    static IndexSnapshot restore(long version, TermDictionary dictionary, List<Segment> segments,
+                                 int[] documentFrequency, float[] idf, float[][] documentScales) {
+        return new IndexSnapshot(version, dictionary, segments, documentFrequency, null,
+                new TfIdfWeights(idf, documentScales), null, false);
+    }
+
+    /**
+     * Same index with more deleted documents: the segments are those of this snapshot, in the
+     * same order, with more tombstones, and the document frequencies no longer count the
+     * passages of the deleted documents. The weights computed so far are kept as they are.
+     */
+    public IndexSnapshot withDeletions(long newVersion, List<Segment> newSegments, int[] newDocumentFrequency) {
+        TfIdfWeights inheritedTfIdf = tfIdf;
+        Bm25Weights inheritedBm25 = bm25;
+        return new IndexSnapshot(newVersion, dictionary, newSegments, newDocumentFrequency, bm25Parameters,
+                inheritedTfIdf, inheritedBm25, staleWeights || inheritedTfIdf != null || inheritedBm25 != null);
+    }
+
+    /**
+     * Same index under another version number
+     */
+    public IndexSnapshot withVersion(long newVersion) {
+        return new IndexSnapshot(newVersion, dictionary, segments, documentFrequency, bm25Parameters, tfIdf, bm25,
+                staleWeights);
+    }
+
+    /**
+     * Same index scored with BM25 with these parameters; the BM25 weights are computed on first use
+     */
+    public IndexSnapshot withBm25(Bm25 parameters) {
+        return new IndexSnapshot(version, dictionary, segments, documentFrequency, parameters, tfIdf, null,
+                staleWeights);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public TermDictionary dictionary() {
+        return dictionary;
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    /**
+     * Global ordinal of the first passage of a segment
+     */
+    public int segmentBase(int segment) {
+        return segmentBases[segment];
+    }
+
+    /**
+     * Global index of the first document of a segment
+     */
+    public int documentBase(int segment) {
+        return documentBases[segment];
+    }
+
+    /**
+     * Number of passages, including those of deleted documents; global ordinals are below it
+     */
+    public int totalPassages() {
+        return totalPassages;
+    }
+
+    /**
+     * Number of documents, including the deleted ones
+     */
+    public int totalDocuments() {
+        return totalDocuments;
+    }
+
+    public int livePassages() {
+        return livePassages;
+    }
+
+    public int liveDocuments() {
+        return liveDocuments;
+    }
+
+    /**
+     * Whether documents were deleted since the inherited IDF and normalization weights were computed
+     */
+    public boolean staleWeights() {
+        return staleWeights;
+    }
+
+    /**
+     * Id of a term in this snapshot, or -1 if no indexed document contains it
+     */
+    public int termId(String term) {
+        int termId = dictionary.idOf(term);
+        return termId < documentFrequency.length ? termId : -1;
+    }
+
+    /**
+     * Id in this snapshot of the term held in the first {@code length} chars of a buffer, or -1
+     */
+    public int termId(char[] buffer, int length) {
+        int termId = dictionary.idOf(buffer, length);
+        return termId < documentFrequency.length ? termId : -1;
+    }
+
+    /**
+     * Document frequencies by term id, shared with the writer and not to be modified
+     */
+    public int[] documentFrequency() {
+        return documentFrequency;
+    }
+
+    public float idf(int termId) {
+        return tfIdf().idf[termId];
+    }
+
+    /**
+     * IDF of a term that no indexed document contains
+     */
+    public double unknownTermIdf() {
+        return inverseDocumentFrequency(livePassages, 0);
+    }
+
+    /**
+     * BM25 weights, or null if the snapshot is not scored with BM25
+     */
+    public Bm25Weights bm25() {
+        if (bm25Parameters == null) {
+            return null;
+        }
+        Bm25Weights weights = bm25;
+        if (weights == null) {
+            synchronized (weightsLock) {
+                weights = bm25;
+                if (weights == null) {
+                    weights = bm25Parameters.weigh(segments, documentFrequency, livePassages);
+                    bm25 = weights;
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Compute the weights used by searches now, rather than on the first search
+     */
+    public void weigh() {
+        if (bm25Parameters != null) {
+            bm25();
+        } else {
+            tfIdf();
+        }
+    }
+
+    public float documentScale(int segment, int ordinal) {
+        return tfIdf().documentScales[segment][ordinal];
+    }
+
+    /**
+     * Normalization factors of the passages of a segment, by local ordinal
+     */
+    public float[] documentScales(int segment) {
+        return tfIdf().documentScales[segment];
+    }
+
+    float[] idf() {
+        return tfIdf().idf;
+    }
+
+    private TfIdfWeights tfIdf() {
+        TfIdfWeights weights = tfIdf;
+        if (weights == null) {
+            synchronized (weightsLock) {
+                weights = tfIdf;
+                if (weights == null) {
+                    weights = computeTfIdf();
+                    tfIdf = weights;
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * TF-IDF weights for this corpus. Passages are the documents of the TF-IDF model:
+     * document frequencies count live passages.
+     */
+    private TfIdfWeights computeTfIdf() {
+        float[] idf = new float[documentFrequency.length];
+        for (int termId = 0; termId < idf.length; termId++) {
+            idf[termId] = (float) inverseDocumentFrequency(livePassages, documentFrequency[termId]);
+        }
+
+        // The document length cancels out once the vector is normalized, so raw counts are enough
+        float[][] documentScales = new float[segments.size()][];
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            float[] scales = new float[segment.size()];
+            for (int ordinal = 0; ordinal < scales.length; ordinal++) {
+                double squaredNorm = segment.vectors().squaredNorm(ordinal, idf);
+                scales[ordinal] = squaredNorm > 0 ? (float) (1.0 / Math.sqrt(squaredNorm)) : 0f;
+            }
+            documentScales[s] = scales;
+        }
+        return new TfIdfWeights(idf, documentScales);
+    }
+
+    /**
+     * Documents that were not deleted, in the order they were added
+     */
+    public List<Document> documents() {
+        List<Document> all = new ArrayList<>(liveDocuments);
+        for (Segment segment : segments) {
+            all.addAll(segment.liveDocuments());
+        }
+        return all;
+    }
+
+    /**
+     * Inverse document frequency for a term appearing in documentCount documents, or passages
+     */
+    public static double inverseDocumentFrequency(long totalDocuments, long documentCount) {
+        return Math.log((double) (totalDocuments + 1) / (documentCount + 1));
+    }
+
+    /**
+     * IDF by term id, and 1 / |tf-idf vector| by segment, then by local passage ordinal
+     */
+    private static final class TfIdfWeights {
+        final float[] idf;
+        final float[][] documentScales;
+
+        TfIdfWeights(float[] idf, float[][] documentScales) {
+            this.idf = idf;
+            this.documentScales = documentScales;
+        }
+    }
+}
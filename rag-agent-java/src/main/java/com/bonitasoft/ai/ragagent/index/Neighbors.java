@@ -0,0 +1,46 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * Result of a {@link VectorIndex} search: vector ids and their cosine similarity, best first
+ */
+public final class Neighbors {
+
+    public static final Neighbors EMPTY = new Neighbors(new int[0], new float[0]);
+
+    private final int[] ids;
+    private final float[] scores;
+
+    private Neighbors(int[] ids, float[] scores) {
+        this.ids = ids;
+        this.scores = scores;
+    }
+
+    /**
+     * Drain the best k entries of a min-heap, discarding the others
+     */
+    static Neighbors drain(ScoreHeap heap, int k) {
+        while (heap.size() > k) {
+            heap.pop();
+        }
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = heap.peekId();
+            scores[i] = heap.peekScore();
+            heap.pop();
+        }
+        return new Neighbors(ids, scores);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public float score(int index) {
+        return scores[index];
+    }
+}
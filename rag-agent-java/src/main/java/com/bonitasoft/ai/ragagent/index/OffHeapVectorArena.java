@@ -0,0 +1,60 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Vector arena storing interleaved (int term id, float value) entries in a direct buffer,
+ * so that vector data does not count against the Java heap.
+ * Also used read-only over the vectors of a memory-mapped segment file.
+ */
+class OffHeapVectorArena extends VectorArena {
+
+    private ByteBuffer entries;
+
+    OffHeapVectorArena() {
+        this.entries = allocate(1024);
+    }
+
+    OffHeapVectorArena(ByteBuffer entries, int[] offsets) {
+        super(offsets, offsets.length - 1);
+        this.entries = entries;
+    }
+
+    @Override
+    protected void ensureEntryCapacity(int count) {
+        if (entries.isReadOnly()) {
+            throw new UnsupportedOperationException("Mapped vector arena is read-only");
+        }
+        if ((long) count * ENTRY_BYTES > entries.capacity()) {
+            long capacity = Math.max((long) count * ENTRY_BYTES, (long) entries.capacity() << 1);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap vector arena cannot exceed 2GB");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity).order(ByteOrder.nativeOrder());
+            grown.put(entries.duplicate().clear());
+            entries = grown;
+        }
+    }
+
+    @Override
+    protected void put(int position, int termId, float value) {
+        int index = position * ENTRY_BYTES;
+        entries.putInt(index, termId);
+        entries.putFloat(index + Integer.BYTES, value);
+    }
+
+    @Override
+    protected int termIdAt(int position) {
+        return entries.getInt(position * ENTRY_BYTES);
+    }
+
+    @Override
+    protected float valueAt(int position) {
+        return entries.getFloat(position * ENTRY_BYTES + Integer.BYTES);
+    }
+
+    private static ByteBuffer allocate(int entryCount) {
+        return ByteBuffer.allocateDirect(entryCount * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,95 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Splits the content of documents into overlapping passages of {@code size} words, each
+ * starting {@code size - overlap} words after the previous one, so that a sentence cut at the
+ * end of a passage is found whole in the next one.
+ *
+ * Words are runs of non-whitespace characters. The first passage starts at the beginning of
+ * the content and the last one ends at its end, so a document of at most {@code size} words
+ * is a single passage spanning all of it. Passages are recorded as offsets into the content,
+ * which is never copied.
+ */
+public final class PassageSplitter {
+
+    private final int size;
+    private final int overlap;
+
+    /**
+     * Passages of {@code size} words overlapping by {@code overlap} words; a size of 0 keeps
+     * each document whole, as a single passage
+     */
+    public PassageSplitter(int size, int overlap) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Passage size must not be negative: " + size);
+        }
+        if (size > 0 && (overlap < 0 || overlap >= size)) {
+            throw new IllegalArgumentException("Passage overlap must be between 0 and " + (size - 1) + ": " + overlap);
+        }
+        this.size = size;
+        this.overlap = size > 0 ? overlap : 0;
+    }
+
+    /**
+     * Splitter keeping each document whole
+     */
+    public static PassageSplitter wholeDocuments() {
+        return new PassageSplitter(0, 0);
+    }
+
+    /**
+     * Add the passages of a document's content, in order
+     */
+    public void split(int document, String content, Passages passages) {
+        int length = content != null ? content.length() : 0;
+        if (size == 0) {
+            passages.add(document, 0, length);
+            return;
+        }
+
+        // Only the words starting a passage and those ending one are needed, but a single
+        // pass recording them all is simpler and cheap next to tokenization
+        int[] wordStarts = new int[Math.max(16, length / 6)];
+        int[] wordEnds = new int[wordStarts.length];
+        int words = 0;
+        for (int i = 0; i < length; ) {
+            while (i < length && Character.isWhitespace(content.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            if (words == wordStarts.length) {
+                wordStarts = Arrays.copyOf(wordStarts, words * 2);
+                wordEnds = Arrays.copyOf(wordEnds, words * 2);
+            }
+            wordStarts[words] = i;
+            while (i < length && !Character.isWhitespace(content.charAt(i))) {
+                i++;
+            }
+            wordEnds[words++] = i;
+        }
+
+        if (words <= size) {
+            passages.add(document, 0, length);
+            return;
+        }
+        for (int first = 0; ; first += size - overlap) {
+            int last = Math.min(first + size, words) - 1;
+            passages.add(document, first == 0 ? 0 : wordStarts[first], last == words - 1 ? length : wordEnds[last]);
+            if (last == words - 1) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Settings of the splitter, which an index built with other settings does not match
+     */
+    @Override
+    public String toString() {
+        return size == 0 ? "whole documents" : size + " words overlapping by " + overlap;
+    }
+}
@@ -0,0 +1,53 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Passages of a list of documents, as parallel arrays of primitive ints: the index of the
+ * document each passage belongs to, and the span of its text as {@code [start, end)} char
+ * offsets into the content of that document. The passages of a document are consecutive.
+ */
+public final class Passages {
+
+    private int[] documents = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int size;
+
+    public void add(int document, int start, int end) {
+        if (size == documents.length) {
+            documents = Arrays.copyOf(documents, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        documents[size] = document;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Append the passages of other documents, whose indexes are shifted by documentOffset
+     */
+    public void addAll(Passages other, int documentOffset) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.documents[i] + documentOffset, other.starts[i], other.ends[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int document(int passage) {
+        return documents[passage];
+    }
+
+    public int start(int passage) {
+        return starts[passage];
+    }
+
+    public int end(int passage) {
+        return ends[passage];
+    }
+}
@@ -0,0 +1,102 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Term counts of a tokenized query, resolved against the dictionary of one index version.
+ *
+ * Two queries with equal terms produce the same query vector, and therefore the same
+ * results, on that version: word order, case, punctuation and stop words are already
+ * normalized away. Terms unknown to the index only matter through the norm of the
+ * query vector, so they are kept as the sum of their squared counts.
+ */
+public final class QueryTerms {
+
+    private final long version;
+    private final int[] termIds;
+    private final int[] counts;
+    private final int totalTerms;
+    private final long unknownTermSquares;
+    private final int hash;
+
+    private QueryTerms(long version, int[] termIds, int[] counts, int totalTerms, long unknownTermSquares) {
+        this.version = version;
+        this.termIds = termIds;
+        this.counts = counts;
+        this.totalTerms = totalTerms;
+        this.unknownTermSquares = unknownTermSquares;
+
+        int h = Long.hashCode(version);
+        h = 31 * h + Arrays.hashCode(termIds);
+        h = 31 * h + Arrays.hashCode(counts);
+        h = 31 * h + totalTerms;
+        this.hash = 31 * h + Long.hashCode(unknownTermSquares);
+    }
+
+    /**
+     * Build from the counts of the known terms, as returned by {@link TermCounter#toVector()}
+     */
+    public static QueryTerms of(long version, SparseVector knownTermCounts, int totalTerms, long unknownTermSquares) {
+        int length = knownTermCounts.size();
+        int[] termIds = new int[length];
+        int[] counts = new int[length];
+        for (int i = 0; i < length; i++) {
+            termIds[i] = knownTermCounts.termId(i);
+            counts[i] = (int) knownTermCounts.value(i);
+        }
+        return new QueryTerms(version, termIds, counts, totalTerms, unknownTermSquares);
+    }
+
+    /**
+     * Index version the term ids belong to
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Number of distinct terms known to the index
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    public int termId(int index) {
+        return termIds[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Number of terms in the query, known or not, repeats included
+     */
+    public int totalTerms() {
+        return totalTerms;
+    }
+
+    public long unknownTermSquares() {
+        return unknownTermSquares;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryTerms other)) {
+            return false;
+        }
+        return version == other.version
+                && totalTerms == other.totalTerms
+                && unknownTermSquares == other.unknownTermSquares
+                && Arrays.equals(termIds, other.termIds)
+                && Arrays.equals(counts, other.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
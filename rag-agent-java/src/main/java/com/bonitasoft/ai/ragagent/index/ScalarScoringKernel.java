@@ -0,0 +1,55 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * {@link ScoringKernel} with plain loops, left to the JIT compiler to optimize
+ */
+final class ScalarScoringKernel implements ScoringKernel {
+
+    static final ScalarScoringKernel INSTANCE = new ScalarScoringKernel();
+
+    private ScalarScoringKernel() {
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double sparseDot(int[] termIds, float[] values, int start, int end,
+                            int[] queryTermIds, float[] queryValues, int queryLength) {
+        return merge(termIds, values, start, end, queryTermIds, queryValues, 0, queryLength);
+    }
+
+    /**
+     * Merge-style intersection of the sorted term ids, from entry {@code i} of the stored vector
+     * and entry {@code j} of the query
+     */
+    static double merge(int[] termIds, float[] values, int i, int end,
+                        int[] queryTermIds, float[] queryValues, int j, int queryLength) {
+        double sum = 0.0;
+        while (i < end && j < queryLength) {
+            int docTerm = termIds[i];
+            int queryTerm = queryTermIds[j];
+            if (docTerm == queryTerm) {
+                sum += values[i] * queryValues[j];
+                i++;
+                j++;
+            } else if (docTerm < queryTerm) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,17 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * Receives the passages scored by a search, typically into a bounded top K heap
+ */
+public interface ScoreCollector {
+
+    /**
+     * Score a passage must exceed to be collected; searches skip the passages that cannot
+     */
+    double threshold();
+
+    /**
+     * Collect a passage, by local ordinal in the segment searched
+     */
+    void collect(int ordinal, double score);
+}
@@ -0,0 +1,54 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * Innermost loops of scoring: dense dot products of float vectors, and sparse dot products
+ * of vectors stored as sorted term ids with parallel values.
+ *
+ * Two implementations exist: a plain scalar one, and one built on the incubating Java Vector
+ * API ({@code jdk.incubator.vector}), which compares and multiplies several lanes per
+ * instruction. The kernel used by the index is selected once at startup by {@link #get()}.
+ */
+public interface ScoringKernel {
+
+    /**
+     * Kernel selected at startup: SIMD when the Vector API module is present (the JVM runs with
+     * {@code --add-modules jdk.incubator.vector}) and the CPU has vector registers of at least
+     * 128 bits, scalar otherwise or when {@code -Drag.simd=false} is set
+     */
+    static ScoringKernel get() {
+        return ScoringKernels.SELECTED;
+    }
+
+    /**
+     * Plain loops, available on every JVM
+     */
+    static ScoringKernel scalar() {
+        return ScalarScoringKernel.INSTANCE;
+    }
+
+    /**
+     * Vector API kernel
+     *
+     * @throws UnsupportedOperationException if the Vector API is not available
+     */
+    static ScoringKernel simd() {
+        return ScoringKernels.simd();
+    }
+
+    /**
+     * Short name for logs and benchmarks
+     */
+    String name();
+
+    /**
+     * Dot product of {@code length} floats of {@code a} from {@code aOffset} and of {@code b} from {@code bOffset}
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Dot product of the stored vector spanning entries {@code [start, end)} of {@code termIds}
+     * and {@code values} with the first {@code queryLength} entries of a query, both sorted by term id
+     */
+    double sparseDot(int[] termIds, float[] values, int start, int end,
+                     int[] queryTermIds, float[] queryValues, int queryLength);
+}
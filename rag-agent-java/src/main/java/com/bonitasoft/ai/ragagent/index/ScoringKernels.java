@@ -0,0 +1,42 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Selection of the {@link ScoringKernel} at class initialization
+ */
+@Slf4j
+final class ScoringKernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    static final ScoringKernel SELECTED = select();
+
+    private ScoringKernels() {
+    }
+
+    static ScoringKernel simd() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            throw new UnsupportedOperationException("The JVM must be started with --add-modules " + VECTOR_MODULE);
+        }
+        if (!SimdScoringKernel.supported()) {
+            throw new UnsupportedOperationException("The CPU has no vector registers usable by the Vector API");
+        }
+        return new SimdScoringKernel();
+    }
+
+    private static ScoringKernel select() {
+        if (!Boolean.parseBoolean(System.getProperty("rag.simd", "true"))) {
+            log.info("Scoring kernel: scalar (disabled by -Drag.simd=false)");
+            return ScoringKernel.scalar();
+        }
+        try {
+            ScoringKernel kernel = simd();
+            log.info("Scoring kernel: {}", kernel.name());
+            return kernel;
+        } catch (UnsupportedOperationException | LinkageError e) {
+            log.info("Scoring kernel: scalar ({})", e.getMessage());
+            return ScoringKernel.scalar();
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Immutable slice of the index: a batch of documents, split into passages, the raw term
+ * count vectors of the passages and the postings of their terms.
+ *
+ * Passages are the unit of the index: local ordinals, vectors and postings are by passage.
+ * For each passage, the segment keeps the index of its document and the span of its text
+ * as char offsets into the document content. The passages of a document are consecutive.
+ *
+ * Postings are stored in compressed sparse row form: the segment's distinct term ids are
+ * sorted in {@code terms}, and the local ordinals of the documents containing
+ * {@code terms[i]} are {@code postingDocs[postingOffsets[i] .. postingOffsets[i + 1])}, with
+ * the number of occurrences of the term in each of them at the same positions of {@code postingCounts}.
+ * The arrays are accessed through {@link IntBuffer}s so that a segment loaded from a
+ * {@link SegmentFile} can use them in place, without copying them to the heap.
+ *
+ * Deleted documents are tombstoned rather than removed: a segment carries the set of its
+ * deleted documents, whose passages searches skip, and deleting more documents makes a copy
+ * sharing everything else with it. Their postings are only dropped when the segment is
+ * rebuilt, by {@link #merge} or {@link #withoutDocuments}.
+ */
+public final class Segment {
+
+    private final List<Document> documents;
+    // Id of each document, read without decoding the documents of a mapped segment
+    private final List<String> ids;
+    // By local ordinal
+    private final IntBuffer passageDocuments;
+    private final IntBuffer passageStarts;
+    private final IntBuffer passageEnds;
+    private final VectorArena vectors;
+    private final IntBuffer terms;
+    private final IntBuffer postingOffsets;
+    private final IntBuffer postingDocs;
+    private final IntBuffer postingCounts;
+    // Indexes of the deleted documents, never modified, their number and the number of their passages
+    private final BitSet deletedDocuments;
+    private final int deletedCount;
+    private final int deletedPassages;
+    private final DocumentIds documentIds;
+
+    private Segment(List<Document> documents, List<String> ids, IntBuffer passageDocuments, IntBuffer passageStarts,
+                    IntBuffer passageEnds, VectorArena vectors,
+                    IntBuffer terms, IntBuffer postingOffsets, IntBuffer postingDocs, IntBuffer postingCounts,
+                    BitSet deletedDocuments, int deletedPassages, DocumentIds documentIds) {
+        this.documents = documents;
+        this.ids = ids;
+        this.passageDocuments = passageDocuments;
+        this.passageStarts = passageStarts;
+        this.passageEnds = passageEnds;
+        this.vectors = vectors;
+        this.terms = terms;
+        this.postingOffsets = postingOffsets;
+        this.postingDocs = postingDocs;
+        this.postingCounts = postingCounts;
+        this.deletedDocuments = deletedDocuments;
+        this.deletedCount = deletedDocuments.cardinality();
+        this.deletedPassages = deletedPassages;
+        this.documentIds = documentIds;
+    }
+
+    /**
+     * Build a segment from documents, their passages, and the term count vectors of the passages,
+     * given in the same order
+     */
+    public static Segment build(List<Document> documents, Passages passages, List<SparseVector> termCounts,
+                                VectorArena arena) {
+        if (passages.size() != termCounts.size()) {
+            throw new IllegalArgumentException(passages.size() + " passages but " + termCounts.size() + " vectors");
+        }
+        long nonZeros = 0;
+        for (SparseVector vector : termCounts) {
+            arena.add(vector);
+            nonZeros += vector.size();
+        }
+        if (nonZeros > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment too large: " + nonZeros + " postings");
+        }
+
+        // Sort (term id, ordinal) pairs packed into longs to lay the postings out term by term
+        long[] pairs = new long[(int) nonZeros];
+        int p = 0;
+        for (int ordinal = 0; ordinal < termCounts.size(); ordinal++) {
+            SparseVector vector = termCounts.get(ordinal);
+            for (int i = 0; i < vector.size(); i++) {
+                pairs[p++] = ((long) vector.termId(i) << 32) | ordinal;
+            }
+        }
+        Arrays.sort(pairs);
+
+        int[] terms = new int[pairs.length];
+        int[] postingOffsets = new int[pairs.length + 1];
+        int[] postingDocs = new int[pairs.length];
+        int termCount = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            int termId = (int) (pairs[i] >>> 32);
+            if (termCount == 0 || terms[termCount - 1] != termId) {
+                terms[termCount] = termId;
+                postingOffsets[termCount] = i;
+                termCount++;
+            }
+            postingDocs[i] = (int) pairs[i];
+        }
+        postingOffsets[termCount] = pairs.length;
+
+        // Passages are visited in ordinal order, so each term's postings are filled in order
+        int[] postingCounts = new int[pairs.length];
+        int[] next = Arrays.copyOf(postingOffsets, termCount);
+        for (SparseVector vector : termCounts) {
+            for (int i = 0; i < vector.size(); i++) {
+                int index = Arrays.binarySearch(terms, 0, termCount, vector.termId(i));
+                postingCounts[next[index]++] = (int) vector.value(i);
+            }
+        }
+
+        int[] passageDocuments = new int[passages.size()];
+        int[] passageStarts = new int[passages.size()];
+        int[] passageEnds = new int[passages.size()];
+        for (int i = 0; i < passageDocuments.length; i++) {
+            passageDocuments[i] = passages.document(i);
+            passageStarts[i] = passages.start(i);
+            passageEnds[i] = passages.end(i);
+        }
+
+        return new Segment(Collections.unmodifiableList(new ArrayList<>(documents)),
+                documents.stream().map(Document::getId).toList(), IntBuffer.wrap(passageDocuments),
+                IntBuffer.wrap(passageStarts), IntBuffer.wrap(passageEnds), arena,
+                IntBuffer.wrap(Arrays.copyOf(terms, termCount)),
+                IntBuffer.wrap(Arrays.copyOf(postingOffsets, termCount + 1)),
+                IntBuffer.wrap(postingDocs), IntBuffer.wrap(postingCounts), new BitSet(), 0, new DocumentIds());
+    }
+
+    /**
+     * Reassemble a segment from its stored parts, with the ids of its documents stored apart from them
+     */
+    static Segment restore(List<Document> documents, List<String> ids, IntBuffer passageDocuments,
+                           IntBuffer passageStarts, IntBuffer passageEnds, VectorArena vectors, IntBuffer terms,
+                           IntBuffer postingOffsets, IntBuffer postingDocs, IntBuffer postingCounts) {
+        return new Segment(documents, ids, passageDocuments, passageStarts, passageEnds, vectors,
+                terms, postingOffsets, postingDocs, postingCounts, new BitSet(), 0, new DocumentIds());
+    }
+
+    /**
+     * Merge segments into a single one, keeping document order, without re-tokenizing.
+     * Deleted documents are left out.
+     */
+    public static Segment merge(List<Segment> segments, Supplier<VectorArena> arenaFactory) {
+        List<Document> documents = new ArrayList<>();
+        Passages passages = new Passages();
+        List<SparseVector> termCounts = new ArrayList<>();
+        for (Segment segment : segments) {
+            int[] documentIndex = new int[segment.documentCount()];
+            for (int d = 0; d < documentIndex.length; d++) {
+                documentIndex[d] = segment.isDocumentDeleted(d) ? -1 : documents.size();
+                if (documentIndex[d] >= 0) {
+                    documents.add(segment.documents.get(d));
+                }
+            }
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                int document = documentIndex[segment.documentIndex(ordinal)];
+                if (document >= 0) {
+                    passages.add(document, segment.passageStarts.get(ordinal), segment.passageEnds.get(ordinal));
+                    termCounts.add(segment.vectors.get(ordinal));
+                }
+            }
+        }
+        return build(documents, passages, termCounts, arenaFactory.get());
+    }
+
+    /**
+     * Copy of the segment without the documents of the given indexes nor its deleted documents,
+     * or null if none is left. The vectors and postings of the remaining passages are rebuilt
+     * from their stored term counts, without re-tokenizing.
+     */
+    public Segment withoutDocuments(BitSet removed, VectorArena arena) {
+        List<Document> kept = new ArrayList<>(documents.size());
+        int[] keptIndex = new int[documents.size()];
+        for (int d = 0; d < documents.size(); d++) {
+            keptIndex[d] = removed.get(d) || isDocumentDeleted(d) ? -1 : kept.size();
+            if (keptIndex[d] >= 0) {
+                kept.add(documents.get(d));
+            }
+        }
+        if (kept.isEmpty()) {
+            return null;
+        }
+
+        Passages passages = new Passages();
+        List<SparseVector> termCounts = new ArrayList<>();
+        for (int ordinal = 0; ordinal < size(); ordinal++) {
+            int document = keptIndex[documentIndex(ordinal)];
+            if (document >= 0) {
+                passages.add(document, passageStarts.get(ordinal), passageEnds.get(ordinal));
+                termCounts.add(vectors.get(ordinal));
+            }
+        }
+        return build(kept, passages, termCounts, arena);
+    }
+
+    /**
+     * Copy of the segment with the documents of the given indexes deleted as well, sharing
+     * its postings and vectors
+     */
+    public Segment withDeletedDocuments(BitSet deleted) {
+        BitSet allDeleted = (BitSet) deletedDocuments.clone();
+        int passages = deletedPassages;
+        for (int d = deleted.nextSetBit(0); d >= 0; d = deleted.nextSetBit(d + 1)) {
+            if (!allDeleted.get(d)) {
+                allDeleted.set(d);
+                passages += firstPassage(d + 1) - firstPassage(d);
+            }
+        }
+        return new Segment(documents, ids, passageDocuments, passageStarts, passageEnds, vectors,
+                terms, postingOffsets, postingDocs, postingCounts, allDeleted, passages, documentIds);
+    }
+
+    /**
+     * Mark the indexes of the live documents with the given id, and return their number.
+     * Documents are indexed by id on the first call, which should only be made by the index writer;
+     * only their ids are read, not the documents themselves.
+     */
+    public int findLiveDocuments(String id, BitSet found) {
+        DocumentIds index = documentIds;
+        if (index.first == null) {
+            index.index(ids);
+        }
+        int count = 0;
+        Integer first = index.first.get(id);
+        for (int d = first != null ? first : -1; d >= 0; d = index.next[d]) {
+            if (!isDocumentDeleted(d)) {
+                found.set(d);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Local ordinal of the first passage of a document, or the number of passages for
+     * {@code documentCount()}; a document's passages end where the next document's begin
+     */
+    public int firstPassage(int documentIndex) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (passageDocuments.get(mid) < documentIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether the document of a passage was deleted
+     */
+    public boolean isDeleted(int ordinal) {
+        return deletedCount > 0 && deletedDocuments.get(passageDocuments.get(ordinal));
+    }
+
+    public boolean isDocumentDeleted(int documentIndex) {
+        return deletedCount > 0 && deletedDocuments.get(documentIndex);
+    }
+
+    /**
+     * Number of deleted documents
+     */
+    public int deletedDocumentCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Number of passages of deleted documents, still in the vectors and postings
+     */
+    public int deletedPassageCount() {
+        return deletedPassages;
+    }
+
+    /**
+     * Number of passages in the segment
+     */
+    public int size() {
+        return passageDocuments.limit();
+    }
+
+    /**
+     * Number of documents in the segment
+     */
+    public int documentCount() {
+        return documents.size();
+    }
+
+    /**
+     * Document of a passage
+     */
+    public Document document(int ordinal) {
+        return documents.get(passageDocuments.get(ordinal));
+    }
+
+    /**
+     * Index of the document of a passage among the segment's documents
+     */
+    public int documentIndex(int ordinal) {
+        return passageDocuments.get(ordinal);
+    }
+
+    /**
+     * Passage of a local ordinal, as a span of its document's content
+     */
+    public Passage passage(int ordinal) {
+        return Passage.builder()
+                .document(document(ordinal))
+                .start(passageStarts.get(ordinal))
+                .end(passageEnds.get(ordinal))
+                .build();
+    }
+
+    /**
+     * The segment's documents, each once, including the deleted ones
+     */
+    public List<Document> documents() {
+        return documents;
+    }
+
+    /**
+     * Ids of the segment's documents, by document index
+     */
+    public List<String> documentIds() {
+        return ids;
+    }
+
+    /**
+     * The segment's documents that were not deleted
+     */
+    public List<Document> liveDocuments() {
+        if (deletedCount == 0) {
+            return documents;
+        }
+        List<Document> live = new ArrayList<>(documents.size() - deletedCount);
+        for (int d = 0; d < documents.size(); d++) {
+            if (!deletedDocuments.get(d)) {
+                live.add(documents.get(d));
+            }
+        }
+        return live;
+    }
+
+    public VectorArena vectors() {
+        return vectors;
+    }
+
+    /**
+     * Mark the documents containing a term among local ordinals {@code [from, to)}, as bits
+     * relative to {@code from}. Postings are sorted by ordinal, so the range is found by binary search.
+     */
+    public void collectPostings(int termId, int from, int to, BitSet ordinals) {
+        int index = indexOfTerm(termId);
+        if (index < 0) {
+            return;
+        }
+        int end = postingOffsets.get(index + 1);
+        for (int i = firstPosting(postingOffsets.get(index), end, from); i < end; i++) {
+            int ordinal = postingDocs.get(i);
+            if (ordinal >= to) {
+                return;
+            }
+            ordinals.set(ordinal - from);
+        }
+    }
+
+    IntBuffer passageDocuments() {
+        return passageDocuments.duplicate();
+    }
+
+    IntBuffer passageStarts() {
+        return passageStarts.duplicate();
+    }
+
+    IntBuffer passageEnds() {
+        return passageEnds.duplicate();
+    }
+
+    IntBuffer terms() {
+        return terms.duplicate();
+    }
+
+    IntBuffer postingOffsets() {
+        return postingOffsets.duplicate();
+    }
+
+    IntBuffer postingDocs() {
+        return postingDocs.duplicate();
+    }
+
+    IntBuffer postingCounts() {
+        return postingCounts.duplicate();
+    }
+
+    /**
+     * Position of the first posting of the term at an index of {@link #terms()}
+     */
+    int postingStart(int index) {
+        return postingOffsets.get(index);
+    }
+
+    /**
+     * Position of the first posting in {@code [start, end)} whose ordinal is at least {@code ordinal}
+     */
+    int firstPosting(int start, int end, int ordinal) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (postingDocs.get(mid) < ordinal) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Binary search of a term id among the segment's sorted terms, or -1 if no document contains it
+     */
+    int indexOfTerm(int termId) {
+        int low = 0;
+        int high = terms.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int term = terms.get(mid);
+            if (term < termId) {
+                low = mid + 1;
+            } else if (term > termId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Documents by id, as the index of the first document with each id and, by document index,
+     * the index of the next document with the same id or -1. Shared by the copies of a segment.
+     */
+    private static final class DocumentIds {
+        Map<String, Integer> first;
+        int[] next;
+
+        void index(List<String> ids) {
+            Map<String, Integer> byId = new HashMap<>();
+            int[] following = new int[ids.size()];
+            // Backwards, so that each id maps to its first document
+            for (int d = ids.size() - 1; d >= 0; d--) {
+                Integer previous = byId.put(ids.get(d), d);
+                following[d] = previous != null ? previous : -1;
+            }
+            next = following;
+            first = byId;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary file holding a whole {@link IndexSnapshot}.
+ *
+ * The file is a startup cache: it is written once the documents found at startup are indexed,
+ * and read at the next start if they did not change. Documents added, updated or deleted
+ * afterwards are not written to it. Only live documents are written, so the file holds no
+ * tombstones; segments with deleted documents must be rebuilt without them first.
+ *
+ * The file is memory-mapped when read: term count vectors, postings and document texts
+ * are used in place from the mapping, and documents are only decoded when a search
+ * returns them, so loading does not depend on the size of the corpus. Document ids are
+ * stored apart from the documents, so that they are looked up without decoding them.
+ * Only the term dictionary and the small per-term and per-passage weights are copied to
+ * the heap.
+ *
+ * Layout (big-endian, every array aligned on 8 bytes):
+ * <pre>
+ * header    magic, format version, source checksum, index version
+ * terms     term count, then each term as UTF-8, document frequencies, IDF
+ * segments  segment count, then for each segment:
+ *           document count, id records size, id records, id offsets,
+ *           document records size, document records, record offsets,
+ *           passage count, passage documents, passage start and end offsets,
+ *           vector offsets, vector entries as (int term id, float count), passage scales,
+ *           posting term count, posting terms, posting offsets, posting documents, posting counts
+ * </pre>
+ */
+public final class SegmentFile {
+
+    private static final int MAGIC = 0x52414749; // "RAGI"
+    private static final int FORMAT_VERSION = 4;
+    private static final int ALIGNMENT = 8;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private SegmentFile() {
+    }
+
+    /**
+     * Write a snapshot without deleted documents, tagged with a checksum of the sources it was
+     * built from. The file is written next to its destination and then moved over it atomically,
+     * so a file that is currently mapped stays valid.
+     */
+    public static void write(Path path, IndexSnapshot snapshot, String sourceChecksum) throws IOException {
+        if (snapshot.liveDocuments() != snapshot.totalDocuments()) {
+            throw new IllegalArgumentException("Segments with deleted documents must be rebuilt before being written");
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16))) {
+                writeSnapshot(out, snapshot, sourceChecksum);
+                if (out.size() == Integer.MAX_VALUE) {
+                    throw new IOException("Index does not fit in a single mapped file (2GB)");
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Map a file written by {@link #write} and return its snapshot, or null if the file does not
+     * exist or was built from other sources. The returned dictionary can be extended by new writes.
+     */
+    public static IndexSnapshot read(Path path, String sourceChecksum) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index file too large to map: " + channel.size() + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an index file: " + path);
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            return null;
+        }
+        if (!sourceChecksum.equals(readString(buffer))) {
+            return null;
+        }
+        long version = buffer.getLong();
+
+        int termCount = buffer.getInt();
+        TermDictionary dictionary = new TermDictionary();
+        for (int termId = 0; termId < termCount; termId++) {
+            dictionary.getOrAdd(readString(buffer));
+        }
+        int[] documentFrequency = new int[termCount];
+        ints(buffer, termCount).get(documentFrequency);
+        float[] idf = new float[termCount];
+        floats(buffer, termCount).get(idf);
+
+        int segmentCount = buffer.getInt();
+        List<Segment> segments = new ArrayList<>(segmentCount);
+        float[][] documentScales = new float[segmentCount][];
+        for (int s = 0; s < segmentCount; s++) {
+            int documentCount = buffer.getInt();
+
+            int idsSize = buffer.getInt();
+            ByteBuffer idRecords = slice(buffer, idsSize);
+            List<String> ids = new MappedStringList(idRecords, ints(buffer, documentCount + 1), documentCount);
+
+            int recordsSize = buffer.getInt();
+            ByteBuffer records = slice(buffer, recordsSize);
+            IntBuffer recordOffsets = ints(buffer, documentCount + 1);
+
+            int passageCount = buffer.getInt();
+            IntBuffer passageDocuments = ints(buffer, passageCount);
+            IntBuffer passageStarts = ints(buffer, passageCount);
+            IntBuffer passageEnds = ints(buffer, passageCount);
+
+            int[] vectorOffsets = new int[passageCount + 1];
+            ints(buffer, passageCount + 1).get(vectorOffsets);
+            ByteBuffer entries = slice(buffer, vectorOffsets[passageCount] * VectorArena.ENTRY_BYTES);
+
+            documentScales[s] = new float[passageCount];
+            floats(buffer, passageCount).get(documentScales[s]);
+
+            int postingTermCount = buffer.getInt();
+            IntBuffer terms = ints(buffer, postingTermCount);
+            IntBuffer postingOffsets = ints(buffer, postingTermCount + 1);
+            IntBuffer postingDocs = ints(buffer, postingOffsets.get(postingTermCount));
+            IntBuffer postingCounts = ints(buffer, postingOffsets.get(postingTermCount));
+
+            segments.add(Segment.restore(new MappedDocumentList(ids, records, recordOffsets), ids,
+                    passageDocuments, passageStarts, passageEnds, VectorArena.mapped(entries, vectorOffsets),
+                    terms, postingOffsets, postingDocs, postingCounts));
+        }
+
+        return IndexSnapshot.restore(version, dictionary, segments, documentFrequency, idf, documentScales);
+    }
+
+    private static void writeSnapshot(DataOutputStream out, IndexSnapshot snapshot, String sourceChecksum)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, sourceChecksum);
+        out.writeLong(snapshot.version());
+
+        int[] documentFrequency = snapshot.documentFrequency();
+        out.writeInt(documentFrequency.length);
+        for (int termId = 0; termId < documentFrequency.length; termId++) {
+            writeString(out, snapshot.dictionary().term(termId));
+        }
+        align(out);
+        for (int frequency : documentFrequency) {
+            out.writeInt(frequency);
+        }
+        align(out);
+        for (float weight : snapshot.idf()) {
+            out.writeFloat(weight);
+        }
+
+        List<Segment> segments = snapshot.segments();
+        out.writeInt(segments.size());
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            out.writeInt(segment.documentCount());
+            writeIds(out, segment.documentIds());
+            writeDocuments(out, segment.documents());
+
+            out.writeInt(segment.size());
+            writeInts(out, segment.passageDocuments());
+            writeInts(out, segment.passageStarts());
+            writeInts(out, segment.passageEnds());
+
+            VectorArena vectors = segment.vectors();
+            align(out);
+            for (int slot = 0; slot <= segment.size(); slot++) {
+                out.writeInt(vectors.offset(slot));
+            }
+            align(out);
+            for (int i = 0, end = vectors.offset(segment.size()); i < end; i++) {
+                out.writeInt(vectors.termIdAt(i));
+                out.writeFloat(vectors.valueAt(i));
+            }
+            align(out);
+            for (float scale : snapshot.documentScales(s)) {
+                out.writeFloat(scale);
+            }
+
+            IntBuffer terms = segment.terms();
+            out.writeInt(terms.remaining());
+            writeInts(out, terms);
+            writeInts(out, segment.postingOffsets());
+            writeInts(out, segment.postingDocs());
+            writeInts(out, segment.postingCounts());
+        }
+    }
+
+    /**
+     * Write the records size, the ids as records, then the offset of each record
+     */
+    private static void writeIds(DataOutputStream out, List<String> ids) throws IOException {
+        int[] offsets = new int[ids.size() + 1];
+        for (int i = 0; i < ids.size(); i++) {
+            offsets[i + 1] = offsets[i] + stringSize(ids.get(i));
+        }
+
+        out.writeInt(offsets[ids.size()]);
+        align(out);
+        for (String id : ids) {
+            writeString(out, id);
+        }
+        align(out);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+    }
+
+    /**
+     * Write the records size, the records, then the offset of each record. Ids are written
+     * apart by {@link #writeIds}.
+     */
+    private static void writeDocuments(DataOutputStream out, List<Document> documents) throws IOException {
+        int[] offsets = new int[documents.size() + 1];
+        for (int i = 0; i < documents.size(); i++) {
+            offsets[i + 1] = offsets[i] + recordSize(documents.get(i));
+        }
+
+        out.writeInt(offsets[documents.size()]);
+        align(out);
+        for (Document document : documents) {
+            writeString(out, document.getTitle());
+            writeString(out, document.getContent());
+            out.writeLong(document.getDate() != null ? document.getDate().toEpochDay() : NO_DATE);
+            writeString(out, document.getVersion());
+            writeString(out, document.getCategory());
+        }
+        align(out);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+    }
+
+    private static int recordSize(Document document) {
+        return stringSize(document.getTitle()) + stringSize(document.getContent())
+                + Long.BYTES + stringSize(document.getVersion()) + stringSize(document.getCategory());
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        align(out);
+        while (values.hasRemaining()) {
+            out.writeInt(values.get());
+        }
+    }
+
+    /**
+     * Write a nullable string as its UTF-8 length (-1 for null) followed by its bytes
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int stringSize(String value) {
+        return Integer.BYTES + (value != null ? utf8Length(value) : 0);
+    }
+
+    /**
+     * Length of {@code value.getBytes(UTF_8)} without encoding it
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are encoded as '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void align(DataOutputStream out) throws IOException {
+        while (out.size() % ALIGNMENT != 0) {
+            out.writeByte(0);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        align(buffer);
+        ByteBuffer slice = buffer.slice(buffer.position(), length).order(buffer.order());
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int count) {
+        return slice(buffer, count * Integer.BYTES).asIntBuffer();
+    }
+
+    private static FloatBuffer floats(ByteBuffer buffer, int count) {
+        return slice(buffer, count * Float.BYTES).asFloatBuffer();
+    }
+
+    private static void align(ByteBuffer buffer) {
+        int misalignment = buffer.position() % ALIGNMENT;
+        if (misalignment != 0) {
+            buffer.position(buffer.position() + ALIGNMENT - misalignment);
+        }
+    }
+
+    /**
+     * Strings of a mapped segment, decoded from their records on access
+     */
+    private static final class MappedStringList extends AbstractList<String> {
+
+        private final ByteBuffer records;
+        private final IntBuffer offsets;
+        private final int size;
+
+        MappedStringList(ByteBuffer records, IntBuffer offsets, int size) {
+            this.records = records;
+            this.offsets = offsets;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return readString(records.duplicate().position(offsets.get(index)));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Documents of a mapped segment, decoded from their records on access
+     */
+    private static final class MappedDocumentList extends AbstractList<Document> {
+
+        private final List<String> ids;
+        private final ByteBuffer records;
+        private final IntBuffer offsets;
+
+        MappedDocumentList(List<String> ids, ByteBuffer records, IntBuffer offsets) {
+            this.ids = ids;
+            this.records = records;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public Document get(int index) {
+            String id = ids.get(index);
+            ByteBuffer record = records.duplicate().position(offsets.get(index));
+            String title = readString(record);
+            String content = readString(record);
+            long epochDay = record.getLong();
+            return Document.builder()
+                    .id(id)
+                    .title(title)
+                    .content(content)
+                    .date(epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null)
+                    .version(readString(record))
+                    .category(readString(record))
+                    .build();
+        }
+
+        @Override
+        public int size() {
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ScoringKernel} on the Java Vector API, using the widest vectors the CPU supports.
+ *
+ * Only loaded through {@link ScoringKernels} once the {@code jdk.incubator.vector} module is
+ * known to be present, as any reference to this class fails to link otherwise.
+ */
+final class SimdScoringKernel implements ScoringKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    static boolean supported() {
+        return FLOATS.vectorBitSize() >= 128 && INTS.length() >= 4;
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + FLOATS.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int step = FLOATS.length();
+        int bound = FLOATS.loopBound(length);
+        // Two accumulators, so that consecutive multiply-adds do not wait on each other
+        FloatVector first = FloatVector.zero(FLOATS);
+        FloatVector second = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i + step < bound; i += 2 * step) {
+            first = FloatVector.fromArray(FLOATS, a, aOffset + i)
+                .mul(FloatVector.fromArray(FLOATS, b, bOffset + i)).add(first);
+            second = FloatVector.fromArray(FLOATS, a, aOffset + i + step)
+                .mul(FloatVector.fromArray(FLOATS, b, bOffset + i + step)).add(second);
+        }
+        for (; i < bound; i += step) {
+            first = FloatVector.fromArray(FLOATS, a, aOffset + i)
+                .mul(FloatVector.fromArray(FLOATS, b, bOffset + i)).add(first);
+        }
+        float sum = first.add(second).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Block-wise intersection: the stored term ids are read a block of lanes at a time, and each
+     * query term is compared to a whole block at once. A block whose last term id is below the
+     * query term is skipped without comparing its entries; the entries left over after the last
+     * full block are merged one by one.
+     */
+    @Override
+    public double sparseDot(int[] termIds, float[] values, int start, int end,
+                            int[] queryTermIds, float[] queryValues, int queryLength) {
+        int width = INTS.length();
+        double sum = 0.0;
+        int i = start;
+        int j = 0;
+        while (i + width <= end && j < queryLength) {
+            int queryTerm = queryTermIds[j];
+            if (termIds[i + width - 1] < queryTerm) {
+                i += width;
+                continue;
+            }
+            // Entries before i are all below the query term, so if present it is in this block
+            VectorMask<Integer> match = IntVector.fromArray(INTS, termIds, i).eq(queryTerm);
+            if (match.anyTrue()) {
+                sum += values[i + match.firstTrue()] * queryValues[j];
+            }
+            j++;
+        }
+        return sum + ScalarScoringKernel.merge(termIds, values, i, end, queryTermIds, queryValues, j, queryLength);
+    }
+}
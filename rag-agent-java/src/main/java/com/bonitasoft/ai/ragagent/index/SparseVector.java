@@ -0,0 +1,67 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Sparse vector with term ids sorted in ascending order and their values in parallel arrays
+ */
+public final class SparseVector {
+
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+    private final int[] termIds;
+    private final float[] values;
+
+    private SparseVector(int[] termIds, float[] values) {
+        this.termIds = termIds;
+        this.values = values;
+    }
+
+    /**
+     * Wrap term ids that are already sorted, without copying
+     */
+    static SparseVector of(int[] sortedTermIds, float[] values) {
+        return new SparseVector(sortedTermIds, values);
+    }
+
+    /**
+     * Build a vector from the first {@code length} unsorted (term id, value) pairs.
+     * Term ids must be distinct and non-negative.
+     */
+    public static SparseVector sorted(int[] termIds, float[] values, int length) {
+        // Pack each pair into a long so that a single primitive sort orders them by term id
+        long[] packed = new long[length];
+        for (int i = 0; i < length; i++) {
+            packed[i] = ((long) termIds[i] << 32) | (Float.floatToRawIntBits(values[i]) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+
+        int[] sortedIds = new int[length];
+        float[] sortedValues = new float[length];
+        for (int i = 0; i < length; i++) {
+            sortedIds[i] = (int) (packed[i] >>> 32);
+            sortedValues[i] = Float.intBitsToFloat((int) packed[i]);
+        }
+        return new SparseVector(sortedIds, sortedValues);
+    }
+
+    public int size() {
+        return termIds.length;
+    }
+
+    public int termId(int index) {
+        return termIds[index];
+    }
+
+    public float value(int index) {
+        return values[index];
+    }
+
+    int[] termIds() {
+        return termIds;
+    }
+
+    float[] values() {
+        return values;
+    }
+}
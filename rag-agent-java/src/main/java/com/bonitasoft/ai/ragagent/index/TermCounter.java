@@ -0,0 +1,144 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates term frequencies by term id in an open-addressing hash table of primitive ints.
+ * Reusable: {@link #toVector()} returns the counts and resets the counter.
+ */
+public final class TermCounter {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    // Term ids in insertion order, so that reset only touches used slots
+    private int[] order;
+    private int size;
+    private int total;
+
+    public TermCounter() {
+        this(64);
+    }
+
+    public TermCounter(int expectedTerms) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedTerms * 2 - 1)) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        order = new int[capacity >> 1];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Count one occurrence of a term
+     */
+    public void add(int termId) {
+        total++;
+        int mask = keys.length - 1;
+        int slot = mix(termId) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == termId) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = termId;
+        counts[slot] = 1;
+        order[size++] = termId;
+        if (size * 2 >= keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Number of distinct terms counted
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of occurrences counted
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * Occurrences of a term
+     */
+    public int count(int termId) {
+        int mask = keys.length - 1;
+        for (int slot = mix(termId) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == termId) {
+                return counts[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Term id of the i-th distinct term counted
+     */
+    public int termId(int index) {
+        return order[index];
+    }
+
+    /**
+     * Return the counts as a vector sorted by term id and reset the counter
+     */
+    public SparseVector toVector() {
+        int[] termIds = new int[size];
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            termIds[i] = order[i];
+            values[i] = count(order[i]);
+        }
+        SparseVector vector = SparseVector.sorted(termIds, values, size);
+        reset();
+        return vector;
+    }
+
+    /**
+     * Forget all counts, keeping the allocated capacity
+     */
+    public void reset() {
+        int mask = keys.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(order[i]) & mask;
+            while (keys[slot] != EMPTY) {
+                keys[slot] = EMPTY;
+                slot = (slot + 1) & mask;
+            }
+        }
+        size = 0;
+        total = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length << 1];
+        counts = new int[oldKeys.length << 1];
+        order = Arrays.copyOf(order, oldKeys.length);
+        Arrays.fill(keys, EMPTY);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(int termId) {
+        return termId * 0x9E3779B9;
+    }
+}
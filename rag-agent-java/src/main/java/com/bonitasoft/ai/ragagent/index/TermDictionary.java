@@ -0,0 +1,157 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps index terms to dense int ids, assigned in insertion order.
+ *
+ * Terms are kept in an open-addressing hash table that can be probed directly with the
+ * characters of a token, so looking up an existing term does not allocate a String.
+ *
+ * Ids are only assigned by a single writer, but {@link #idOf} may be called concurrently
+ * by readers: entries are immutable, a resized table is fully populated before it is
+ * published, and an id is never reassigned, so readers only need to ignore ids that are
+ * newer than the index snapshot they are reading.
+ */
+public class TermDictionary {
+
+    private volatile Entry[] table = new Entry[1024];
+    private final List<String> terms = new ArrayList<>();
+
+    /**
+     * Get the id of a term, or -1 if the term is unknown
+     */
+    public int idOf(String term) {
+        Entry[] entries = table;
+        int hash = term.hashCode();
+        int mask = entries.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            Entry entry = entries[slot];
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.hash == hash && entry.term.equals(term)) {
+                return entry.id;
+            }
+        }
+    }
+
+    /**
+     * Get the id of the term held in the first {@code length} chars of a buffer, or -1 if the term is unknown
+     */
+    public int idOf(char[] buffer, int length) {
+        Entry[] entries = table;
+        int hash = hash(buffer, length);
+        int mask = entries.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            Entry entry = entries[slot];
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.hash == hash && entry.matches(buffer, length)) {
+                return entry.id;
+            }
+        }
+    }
+
+    /**
+     * Get the id of a term, assigning the next id if the term is new
+     */
+    public int getOrAdd(String term) {
+        int id = idOf(term);
+        return id >= 0 ? id : add(term, term.hashCode());
+    }
+
+    /**
+     * Get the id of the term held in the first {@code length} chars of a buffer,
+     * assigning the next id if the term is new
+     */
+    public int getOrAdd(char[] buffer, int length) {
+        int id = idOf(buffer, length);
+        return id >= 0 ? id : add(new String(buffer, 0, length), hash(buffer, length));
+    }
+
+    /**
+     * Get the term for an id
+     */
+    public String term(int id) {
+        return terms.get(id);
+    }
+
+    /**
+     * Number of distinct terms
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    private int add(String term, int hash) {
+        int id = terms.size();
+        terms.add(term);
+
+        Entry[] entries = table;
+        if ((id + 1) * 2 > entries.length) {
+            // Fill the larger table before publishing it so readers never see it half populated
+            Entry[] grown = new Entry[entries.length << 1];
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    insert(grown, entry);
+                }
+            }
+            insert(grown, new Entry(term, hash, id));
+            table = grown;
+        } else {
+            insert(entries, new Entry(term, hash, id));
+        }
+        return id;
+    }
+
+    private static void insert(Entry[] entries, Entry entry) {
+        int mask = entries.length - 1;
+        int slot = spread(entry.hash) & mask;
+        while (entries[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        entries[slot] = entry;
+    }
+
+    /**
+     * Same hash as {@link String#hashCode()}, computed over a char buffer
+     */
+    private static int hash(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+        final String term;
+        final int hash;
+        final int id;
+
+        Entry(String term, int hash, int id) {
+            this.term = term;
+            this.hash = hash;
+            this.id = id;
+        }
+
+        boolean matches(char[] buffer, int length) {
+            if (term.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (term.charAt(i) != buffer[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Documents tokenized against a private {@link TermDictionary}, so that several batches
+ * can be tokenized in parallel away from the index writer.
+ *
+ * A batch is confined to the thread that fills it. Its term ids are only meaningful
+ * within the batch until {@link #remap(TermDictionary)} translates them to the ids of
+ * the index dictionary.
+ */
+public final class TokenizedBatch {
+
+    private final PassageSplitter splitter;
+    private final TermDictionary dictionary = new TermDictionary();
+    private final TermCounter counter = new TermCounter();
+    private final List<Document> documents = new ArrayList<>();
+    private final Passages passages = new Passages();
+    private final List<SparseVector> termCounts = new ArrayList<>();
+
+    public TokenizedBatch() {
+        this(PassageSplitter.wholeDocuments());
+    }
+
+    /**
+     * Batch splitting its documents into passages, as the index they are added to does
+     */
+    public TokenizedBatch(PassageSplitter splitter) {
+        this.splitter = splitter;
+    }
+
+    /**
+     * Split a document into passages and tokenize each of them into its raw term count vector
+     */
+    public void add(Document document) {
+        int first = passages.size();
+        String content = document.getContent();
+        splitter.split(documents.size(), content, passages);
+        for (int p = first; p < passages.size(); p++) {
+            Tokenizer.tokenize(content, passages.start(p), passages.end(p),
+                    (buffer, length) -> counter.add(dictionary.getOrAdd(buffer, length)));
+            termCounts.add(counter.toVector());
+        }
+        documents.add(document);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public List<Document> documents() {
+        return Collections.unmodifiableList(documents);
+    }
+
+    /**
+     * Passages of the documents, by index in {@link #documents()}
+     */
+    public Passages passages() {
+        return passages;
+    }
+
+    /**
+     * Term count vectors of the passages, in the order they were added, with their term
+     * ids translated to the given dictionary. Terms it does not know yet are added in the
+     * order they first appeared in the batch, so merging batches in order assigns the same
+     * ids as tokenizing all their documents one after another.
+     */
+    public List<SparseVector> remap(TermDictionary target) {
+        int[] targetIds = new int[dictionary.size()];
+        for (int termId = 0; termId < targetIds.length; termId++) {
+            targetIds[termId] = target.getOrAdd(dictionary.term(termId));
+        }
+
+        List<SparseVector> remapped = new ArrayList<>(termCounts.size());
+        for (SparseVector vector : termCounts) {
+            int length = vector.size();
+            int[] termIds = new int[length];
+            float[] values = new float[length];
+            for (int i = 0; i < length; i++) {
+                termIds[i] = targetIds[vector.termId(i)];
+                values[i] = vector.value(i);
+            }
+            remapped.add(SparseVector.sorted(termIds, values, length));
+        }
+        return remapped;
+    }
+}
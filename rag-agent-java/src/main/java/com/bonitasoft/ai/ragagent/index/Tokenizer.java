@@ -0,0 +1,127 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Single-pass tokenizer.
+ *
+ * Scans the text once, lower-casing letters and treating every character that is not
+ * an ASCII letter or digit as a separator. Each token is written into a reusable char
+ * buffer and handed to a {@link TermSink}; short tokens and stop words are dropped
+ * without allocating a String.
+ */
+public final class Tokenizer {
+
+    /**
+     * Receives each term as the first {@code length} chars of a buffer that is reused for the next term
+     */
+    @FunctionalInterface
+    public interface TermSink {
+        void term(char[] buffer, int length);
+    }
+
+    private static final int MIN_TERM_LENGTH = 3;
+
+    /**
+     * Common English stop words
+     */
+    private static final String[] STOP_WORDS = {
+        "the", "and", "for", "are", "but", "not", "you", "all", "can", "her", "was",
+        "one", "our", "out", "day", "get", "has", "him", "his", "how", "its", "may",
+        "she", "who", "will", "with", "this", "that", "from", "have", "been", "they",
+        "what", "when", "your", "more", "into", "than", "some", "time", "very", "would"
+    };
+
+    private static final int MAX_STOP_WORD_LENGTH = 5;
+
+    // Stop words packed into longs (see pack), sorted for binary search
+    private static final long[] STOP_WORD_CODES = Stream.of(STOP_WORDS)
+            .mapToLong(word -> pack(word.toCharArray(), word.length()))
+            .sorted()
+            .toArray();
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Tokenize text and return the number of terms passed to the sink
+     */
+    public static int tokenize(CharSequence text, TermSink sink) {
+        return text != null ? tokenize(text, 0, text.length(), sink) : 0;
+    }
+
+    /**
+     * Tokenize the chars of text in {@code [start, end)}, e.g. a passage, without copying them
+     */
+    public static int tokenize(CharSequence text, int start, int end, TermSink sink) {
+        if (text == null) {
+            return 0;
+        }
+
+        char[] buffer = new char[32];
+        int length = 0;
+        int terms = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = fold(text.charAt(i));
+            if (c != 0) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length << 1);
+                }
+                buffer[length++] = c;
+            } else if (length > 0) {
+                terms += emit(buffer, length, sink);
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            terms += emit(buffer, length, sink);
+        }
+        return terms;
+    }
+
+    /**
+     * Whether the first {@code length} chars of a lower-cased buffer are a stop word
+     */
+    public static boolean isStopWord(char[] buffer, int length) {
+        return length <= MAX_STOP_WORD_LENGTH && Arrays.binarySearch(STOP_WORD_CODES, pack(buffer, length)) >= 0;
+    }
+
+    private static int emit(char[] buffer, int length, TermSink sink) {
+        if (length < MIN_TERM_LENGTH || isStopWord(buffer, length)) {
+            return 0;
+        }
+        sink.term(buffer, length);
+        return 1;
+    }
+
+    /**
+     * Lower-case a character, or return 0 if it is not a letter or digit in [a-z0-9] once lower-cased
+     */
+    private static char fold(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        if (c < 128) {
+            return 0;
+        }
+        char lower = Character.toLowerCase(c);
+        return lower >= 'a' && lower <= 'z' ? lower : 0;
+    }
+
+    /**
+     * Encode a short [a-z0-9] term as a base-37 number
+     */
+    private static long pack(char[] buffer, int length) {
+        long code = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            code = code * 37 + (c <= '9' ? c - '0' + 27 : c - 'a' + 1);
+        }
+        return code;
+    }
+}
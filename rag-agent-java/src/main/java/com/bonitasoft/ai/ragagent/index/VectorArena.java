@@ -0,0 +1,154 @@
+package com.bonitasoft.ai.ragagent.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only storage for sparse document vectors.
+ * An arena is filled by a single thread and must not be modified once it is shared with readers.
+ *
+ * All vectors are laid out contiguously as (term id, value) entries sorted by term id;
+ * the vector stored in slot {@code i} spans entries {@code [offsets[i], offsets[i + 1])}.
+ * The entries live either in primitive arrays on the heap, in a direct buffer off-heap,
+ * or in a read-only memory-mapped segment file.
+ */
+public abstract class VectorArena {
+
+    private int[] offsets;
+    private int count;
+
+    protected VectorArena() {
+        this(new int[16], 0);
+    }
+
+    /**
+     * Arena over existing entries, where {@code offsets} holds {@code count + 1} positions
+     */
+    protected VectorArena(int[] offsets, int count) {
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /**
+     * Arena backed by {@code int[]}/{@code float[]} arrays
+     */
+    public static VectorArena onHeap() {
+        return new HeapVectorArena();
+    }
+
+    /**
+     * Arena backed by a direct {@link java.nio.ByteBuffer}, outside of the Java heap
+     */
+    public static VectorArena offHeap() {
+        return new OffHeapVectorArena();
+    }
+
+    /**
+     * Read-only arena over (int term id, float value) entries of a mapped file
+     */
+    public static VectorArena mapped(ByteBuffer entries, int[] offsets) {
+        return new OffHeapVectorArena(entries, offsets);
+    }
+
+    /**
+     * Append a vector and return its slot
+     */
+    public int add(SparseVector vector) {
+        int start = offsets[count];
+        int end = start + vector.size();
+        ensureEntryCapacity(end);
+        for (int i = 0; i < vector.size(); i++) {
+            put(start + i, vector.termId(i), vector.value(i));
+        }
+
+        if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length << 1);
+        }
+        offsets[count + 1] = end;
+        return count++;
+    }
+
+    /**
+     * Number of vectors stored
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Copy a stored vector out of the arena
+     */
+    public SparseVector get(int slot) {
+        int start = offsets[slot];
+        int length = offsets[slot + 1] - start;
+        int[] termIds = new int[length];
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            termIds[i] = termIdAt(start + i);
+            values[i] = valueAt(start + i);
+        }
+        return SparseVector.of(termIds, values);
+    }
+
+    /**
+     * Dot product of a stored vector with a query vector, merging both sorted term id lists
+     */
+    public double dot(int slot, SparseVector query) {
+        int i = offsets[slot];
+        int end = offsets[slot + 1];
+        int j = 0;
+        int queryEnd = query.size();
+        double sum = 0.0;
+
+        while (i < end && j < queryEnd) {
+            int docTerm = termIdAt(i);
+            int queryTerm = query.termId(j);
+            if (docTerm == queryTerm) {
+                sum += valueAt(i) * query.value(j);
+                i++;
+                j++;
+            } else if (docTerm < queryTerm) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Squared L2 norm of a stored vector after scaling each value by a per-term weight
+     */
+    public double squaredNorm(int slot, float[] termWeights) {
+        double sum = 0.0;
+        for (int i = offsets[slot], end = offsets[slot + 1]; i < end; i++) {
+            double weighted = valueAt(i) * termWeights[termIdAt(i)];
+            sum += weighted * weighted;
+        }
+        return sum;
+    }
+
+    /**
+     * Position of the first entry of a slot; {@code offset(size())} is the total number of entries
+     */
+    int offset(int slot) {
+        return offsets[slot];
+    }
+
+    /**
+     * Bytes used by the stored entries and offsets
+     */
+    public long bytesUsed() {
+        return (long) offsets[count] * ENTRY_BYTES + (long) offsets.length * Integer.BYTES;
+    }
+
+    static final int ENTRY_BYTES = Integer.BYTES + Float.BYTES;
+
+    protected abstract void ensureEntryCapacity(int entries);
+
+    protected abstract void put(int position, int termId, float value);
+
+    protected abstract int termIdAt(int position);
+
+    protected abstract float valueAt(int position);
+}
@@ -0,0 +1,47 @@
+package com.bonitasoft.ai.ragagent.index;
+
+/**
+ * Nearest neighbour index over dense vectors of a fixed dimension, by cosine similarity.
+ *
+ * Vectors get consecutive ids from 0 in the order they are added. Additions are serialized,
+ * but searches may run concurrently with them and see any prefix of the added vectors.
+ */
+public interface VectorIndex {
+
+    /**
+     * Exact search, scanning every vector
+     */
+    static VectorIndex flat(int dimension) {
+        return new FlatVectorIndex(dimension);
+    }
+
+    /**
+     * Approximate search on a Hierarchical Navigable Small World graph
+     *
+     * @param m              links per node and layer (twice as many on the bottom layer)
+     * @param efConstruction candidates considered when linking a new vector
+     * @param efSearch       candidates considered by a search, at least the number of results
+     */
+    static VectorIndex hnsw(int dimension, int m, int efConstruction, int efSearch) {
+        return new HnswVectorIndex(dimension, m, efConstruction, efSearch);
+    }
+
+    int dimension();
+
+    int size();
+
+    /**
+     * Bytes allocated for the vectors and, if any, the graph linking them
+     */
+    long bytesUsed();
+
+    /**
+     * Add a vector and return its id. The vector is copied and normalized to unit length.
+     */
+    int add(float[] vector);
+
+    /**
+     * The k vectors most similar to the query, best first
+     */
+    Neighbors search(float[] query, int k);
+}
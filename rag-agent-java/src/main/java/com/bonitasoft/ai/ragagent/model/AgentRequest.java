@@ -1,5 +1,6 @@
 package com.bonitasoft.ai.ragagent.model;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -23,7 +24,9 @@ public class AgentRequest {
     @NotBlank(message = "Task is required")
     private String task;
 
+    // The Bonita connector sends it as "input"
     @JsonProperty("input_data")
+    @JsonAlias("input")
     @NotNull(message = "Input data cannot be null")
     @NotEmpty(message = "Input data cannot be empty")
     private Map<String, Object> inputData;
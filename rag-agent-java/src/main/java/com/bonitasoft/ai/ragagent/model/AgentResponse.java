@@ -14,7 +14,7 @@ import java.util.Map;
  * RAG Agent Response
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -0,0 +1,39 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Document ingestion result
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestionResponse {
+
+    private String status;
+
+    private int documentsIndexed;
+
+    private int documentsRejected;
+
+    private int batches;
+
+    private long elapsedMs;
+
+    private double documentsPerSecond;
+
+    /**
+     * First rejected records and parse errors
+     */
+    private List<String> errors;
+
+    private String error;
+}
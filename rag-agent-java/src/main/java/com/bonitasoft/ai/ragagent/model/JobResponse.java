@@ -0,0 +1,40 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * State of an asynchronous RAG job
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"job_id", "status"})
+public class JobResponse {
+
+    @JsonProperty("job_id")
+    private String jobId;
+
+    // queued, running, done, failed or error when the job could not be submitted
+    private String status;
+
+    @JsonProperty("submitted_at")
+    private Instant submittedAt;
+
+    @JsonProperty("completed_at")
+    private Instant completedAt;
+
+    // Response of the query once the job is done
+    private AgentResponse result;
+
+    private String error;
+}
@@ -0,0 +1,40 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.CharBuffer;
+
+/**
+ * Passage of a document retrieved by a search: the chars {@code [start, end)} of its content
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Passage {
+
+    private Document document;
+
+    private int start;
+
+    private int end;
+
+    /**
+     * Passage spanning a whole document
+     */
+    public static Passage of(Document document) {
+        String content = document.getContent();
+        return new Passage(document, 0, content != null ? content.length() : 0);
+    }
+
+    /**
+     * Text of the passage, as a view of the document content rather than a copy
+     */
+    public CharSequence text() {
+        String content = document.getContent();
+        return content != null ? CharBuffer.wrap(content, start, end) : "";
+    }
+}
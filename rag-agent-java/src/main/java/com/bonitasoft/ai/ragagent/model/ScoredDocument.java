@@ -0,0 +1,35 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Document retrieved by a search, with the char offsets of its best passage in its content
+ * and the similarity of that passage to the query
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoredDocument {
+
+    private double score;
+
+    private Document document;
+
+    @JsonProperty("passage_start")
+    private int passageStart;
+
+    @JsonProperty("passage_end")
+    private int passageEnd;
+
+    /**
+     * The best passage, as a span of the document content
+     */
+    public Passage toPassage() {
+        return Passage.builder().document(document).start(passageStart).end(passageEnd).build();
+    }
+}
@@ -0,0 +1,31 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Search of one node's documents sent by a cluster coordinator, weighted with the term
+ * statistics of the whole cluster
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardSearchRequest {
+
+    @NotBlank
+    private String question;
+
+    @JsonProperty("top_k")
+    @Positive
+    private int topK;
+
+    @NotNull
+    private TermStatistics statistics;
+}
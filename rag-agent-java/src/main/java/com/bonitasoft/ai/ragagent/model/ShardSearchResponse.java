@@ -0,0 +1,24 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Best documents of one node for a {@link ShardSearchRequest}, best first
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardSearchResponse {
+
+    @JsonProperty("documents_searched")
+    private int documentsSearched;
+
+    private List<ScoredDocument> results;
+}
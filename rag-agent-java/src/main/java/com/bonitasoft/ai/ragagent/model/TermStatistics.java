@@ -0,0 +1,47 @@
+package com.bonitasoft.ai.ragagent.model;
+
+import com.bonitasoft.ai.ragagent.index.IndexSnapshot;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Document count and document frequencies of some terms, on one node or summed over a cluster
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TermStatistics {
+
+    private long documents;
+
+    @JsonProperty("document_frequencies")
+    @Builder.Default
+    private Map<String, Long> documentFrequencies = new HashMap<>();
+
+    /**
+     * IDF of a term, computed as by a single index holding all the documents counted
+     */
+    public double idf(String term) {
+        return IndexSnapshot.inverseDocumentFrequency(documents, documentFrequencies.getOrDefault(term, 0L));
+    }
+
+    /**
+     * Statistics of the union of the nodes' documents
+     */
+    public static TermStatistics sum(Collection<TermStatistics> nodes) {
+        TermStatistics total = new TermStatistics();
+        for (TermStatistics node : nodes) {
+            total.documents += node.documents;
+            node.documentFrequencies.forEach((term, count) -> total.documentFrequencies.merge(term, count, Long::sum));
+        }
+        return total;
+    }
+}
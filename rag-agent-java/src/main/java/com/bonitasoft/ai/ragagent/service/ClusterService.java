@@ -0,0 +1,192 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Tokenizer;
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import com.bonitasoft.ai.ragagent.model.ScoredDocument;
+import com.bonitasoft.ai.ragagent.model.ShardSearchRequest;
+import com.bonitasoft.ai.ragagent.model.ShardSearchResponse;
+import com.bonitasoft.ai.ragagent.model.TermStatistics;
+import com.bonitasoft.ai.ragagent.service.QueryTimings.Stage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Coordinator of a cluster of rag-agent nodes, each holding a shard of the corpus
+ * ({@code rag.cluster.node-count} and {@code node-index}).
+ *
+ * A query is answered in two round trips to all the nodes of {@code rag.cluster.nodes}, in
+ * parallel: the nodes first return the document frequencies of the query terms, summed into
+ * the statistics of the whole corpus; then each node searches its documents with the query
+ * weighted by these global statistics, so that scores are comparable across nodes, and
+ * returns its top K documents with the span and score of their best passage. The
+ * coordinator keeps the global top K and builds the response from it, with conflict
+ * detection, as a single node would.
+ *
+ * Any node, including one holding no documents, can coordinate. A node that fails or times
+ * out fails the query rather than silently dropping its shard.
+ */
+@Slf4j
+@Service
+public class ClusterService {
+
+    private final List<URI> nodes;
+    private final Duration timeout;
+    private final ObjectMapper objectMapper;
+    private final RagService ragService;
+    private final RagMetrics metrics;
+    private final HttpClient client;
+
+    @Value("${rag.max-sources:5}")
+    private int maxSources;
+
+    public ClusterService(@Value("${rag.cluster.nodes:}") List<String> nodes,
+                          @Value("${rag.cluster.timeout:5s}") Duration timeout,
+                          ObjectMapper objectMapper, RagService ragService, RagMetrics metrics) {
+        this.nodes = nodes.stream()
+            .map(String::trim)
+            .filter(node -> !node.isEmpty())
+            .map(node -> URI.create(node.endsWith("/") ? node : node + "/"))
+            .toList();
+        this.timeout = timeout;
+        this.objectMapper = objectMapper;
+        this.ragService = ragService;
+        this.metrics = metrics;
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(timeout)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    /**
+     * Whether nodes are configured for this instance to coordinate
+     */
+    public boolean enabled() {
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * Answer a question from the documents of all the nodes
+     */
+    public AgentResponse processQuery(String question) {
+        log.info("Processing query over {} nodes: {}", nodes.size(), question);
+        QueryTimings timings = new QueryTimings();
+
+        // Round trip 1: statistics of the query terms over the whole corpus
+        long start = System.nanoTime();
+        Set<String> terms = new LinkedHashSet<>();
+        Tokenizer.tokenize(question, (buffer, length) -> terms.add(new String(buffer, 0, length)));
+        TermStatistics statistics = TermStatistics.sum(
+            fanOut("cluster/stats", terms, TermStatistics.class));
+        long gathered = System.nanoTime();
+        timings.add(Stage.TOKENIZE, gathered - start);
+
+        // Round trip 2: top K of each node, merged into the global top K
+        ShardSearchRequest request = ShardSearchRequest.builder()
+            .question(question)
+            .topK(maxSources)
+            .statistics(statistics)
+            .build();
+        List<ShardSearchResponse> responses = fanOut("cluster/search", request, ShardSearchResponse.class);
+        long searched = System.nanoTime();
+        timings.add(Stage.SCORING, searched - gathered);
+
+        List<ScoredDocument> merged = new ArrayList<>();
+        long documentsSearched = 0;
+        for (ShardSearchResponse response : responses) {
+            merged.addAll(response.getResults());
+            documentsSearched += response.getDocumentsSearched();
+        }
+        // Stable sort: equal scores keep node order, then each node's own order
+        merged.sort(Comparator.comparingDouble(ScoredDocument::getScore).reversed());
+        List<Passage> passages = merged.stream()
+            .limit(maxSources)
+            .map(ScoredDocument::toPassage)
+            .toList();
+        timings.add(Stage.TOP_K, System.nanoTime() - searched);
+
+        AgentResponse response = ragService.buildResponse(question, passages, documentsSearched, timings);
+        metrics.record(timings);
+
+        Map<String, Object> usage = new LinkedHashMap<>(response.getUsage());
+        usage.put("nodes", nodes.size());
+        usage.put("timingsMs", timings.toMillis());
+        return response.toBuilder().usage(usage).build();
+    }
+
+    /**
+     * POST the same body to a path of every node in parallel, returning their responses in node order
+     */
+    private <T> List<T> fanOut(String path, Object body, Class<T> responseType) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<CompletableFuture<T>> calls = new ArrayList<>(nodes.size());
+        for (URI node : nodes) {
+            HttpRequest request = HttpRequest.newBuilder(node.resolve(path))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+            calls.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> parse(node, response, responseType)));
+        }
+
+        List<T> results = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                results.add(calls.get(i).join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ClusterException failure) {
+                    throw failure;
+                }
+                throw new ClusterException("Node " + nodes.get(i) + " failed: " + e.getCause(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private <T> T parse(URI node, HttpResponse<String> response, Class<T> responseType) {
+        if (response.statusCode() != 200) {
+            throw new ClusterException("Node " + node + " answered HTTP " + response.statusCode(), null);
+        }
+        try {
+            return objectMapper.readValue(response.body(), responseType);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A node of the cluster could not be queried
+     */
+    public static class ClusterException extends RuntimeException {
+        public ClusterException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
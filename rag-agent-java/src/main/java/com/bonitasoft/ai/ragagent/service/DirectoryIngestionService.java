@@ -0,0 +1,568 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ingestion of PDF, DOCX and HTML files from a local directory ({@code rag.ingestion.directory}).
+ *
+ * Once the application is ready, the directory is walked and its files are queued to a pool of
+ * {@code parsers} threads, which extract their text with Tika's {@link AutoDetectParser}. The
+ * file is streamed through the parser and its text through a SAX {@link DefaultHandler}, which
+ * cuts it into documents of at most {@code part-size} characters as it arrives, so neither the
+ * file nor its whole text is ever held in memory. Parts are put on a bounded queue drained by a
+ * single indexer thread, which commits them in batches. When indexing falls behind, the queue
+ * fills up and the parsers block in the middle of their file until it has room again, and the
+ * walk blocks in turn on the bounded queue of files.
+ *
+ * With {@code watch} enabled, the directory is then watched with a {@link WatchService}: files
+ * added, modified or deleted are collected until no change has been seen for the
+ * {@code debounce} period, so that a burst of events, e.g. a file being written, is handled
+ * once, and the whole burst is applied as a single update of the store. The changed files are
+ * parsed again, and their previous parts replaced by the new ones in one step, so searches see
+ * either the previous or the new version of the directory.
+ *
+ * Files larger than {@code max-file-size} are skipped. The category of a document is the
+ * directory of its file, relative to the ingestion directory, and its date is the file's last
+ * modification, so that the files of a directory are treated as versions of the same policy.
+ *
+ * tika-core only detects formats: the parsers of the formats themselves come from
+ * {@code tika-parsers-standard-package}, added by the {@code tika-parsers} Maven profile.
+ */
+@Slf4j
+@Service
+public class DirectoryIngestionService {
+
+    private static final String DEFAULT_CATEGORY = "general";
+
+    private final Path directory;
+    private final Set<String> extensions;
+    private final int parsers;
+    private final long maxFileSize;
+    private final int partSize;
+    private final int batchSize;
+    private final boolean watch;
+    private final long debounceNanos;
+    private final DocumentIngestionService ingestionService;
+
+    private final Parser parser = new AutoDetectParser();
+    private final BlockingQueue<Path> files;
+    private final BlockingQueue<Document> parts;
+    private final ExecutorService executor;
+
+    // Number of parts indexed from each file, to remove them when it changes
+    private final Map<Path, Integer> partCounts = new ConcurrentHashMap<>();
+    // Files queued or being parsed, and parts queued or being indexed
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger pendingParts = new AtomicInteger();
+    private final AtomicInteger filesParsed = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicInteger partsIndexed = new AtomicInteger();
+
+    public DirectoryIngestionService(@Value("${rag.ingestion.directory:}") String directory,
+                                     @Value("${rag.ingestion.extensions:pdf,docx,html,htm}") List<String> extensions,
+                                     @Value("${rag.ingestion.parsers:2}") int parsers,
+                                     @Value("${rag.ingestion.queue-capacity:64}") int queueCapacity,
+                                     @Value("${rag.ingestion.max-file-size:20MB}") DataSize maxFileSize,
+                                     @Value("${rag.ingestion.part-size:65536}") int partSize,
+                                     @Value("${rag.ingestion.batch-size:1000}") int batchSize,
+                                     @Value("${rag.ingestion.watch:true}") boolean watch,
+                                     @Value("${rag.ingestion.debounce:1s}") Duration debounce,
+                                     DocumentIngestionService ingestionService) {
+        if (parsers < 1 || queueCapacity < 1 || partSize < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("rag.ingestion parsers, queue-capacity, part-size and batch-size must be positive");
+        }
+        this.directory = directory.isBlank() ? null : Paths.get(directory).toAbsolutePath().normalize();
+        this.extensions = extensions.stream()
+            .map(extension -> extension.trim().toLowerCase(Locale.ROOT))
+            .filter(extension -> !extension.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        this.parsers = parsers;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.partSize = partSize;
+        this.batchSize = batchSize;
+        this.watch = watch;
+        this.debounceNanos = debounce.toNanos();
+        this.ingestionService = ingestionService;
+        this.files = new ArrayBlockingQueue<>(queueCapacity);
+        this.parts = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = this.directory != null
+            ? Executors.newFixedThreadPool(parsers + 2, threadFactory("rag-ingest-"))
+            : null;
+    }
+
+    /**
+     * Whether a directory is configured
+     */
+    public boolean enabled() {
+        return directory != null;
+    }
+
+    /**
+     * Start the parsers and the indexer, and walk the directory, then watch it if enabled.
+     * Runs once the documents of the classpath are loaded, so that loading a saved index
+     * cannot replace these.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled()) {
+            return;
+        }
+        if (!Files.isDirectory(directory)) {
+            log.warn("Ingestion directory {} does not exist, no files will be indexed", directory);
+            return;
+        }
+        if (!parser.getSupportedTypes(new ParseContext()).contains(MediaType.application("pdf"))) {
+            log.warn("No Tika parser for PDF on the classpath: build with -Ptika-parsers to index PDF, DOCX and HTML files");
+        }
+
+        for (int i = 0; i < parsers; i++) {
+            executor.execute(this::parseFiles);
+        }
+        executor.execute(this::indexParts);
+        executor.execute(watch ? this::watch : this::walk);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue a file to be parsed and indexed, waiting for room in the queue
+     */
+    public void submit(Path file) throws InterruptedException {
+        pending.incrementAndGet();
+        try {
+            files.put(file);
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void walk() {
+        long start = System.nanoTime();
+        int queued = 0;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) paths.filter(this::accepts)::iterator) {
+                submit(file);
+                queued++;
+            }
+            log.info("Queued {} files of {} for ingestion in {} ms", queued, directory,
+                (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Could not walk ingestion directory {}: {}", directory, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether a path is a regular file with one of the configured extensions
+     */
+    private boolean accepts(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0
+            && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))
+            && Files.isRegularFile(file);
+    }
+
+    private void parseFiles() {
+        try {
+            while (true) {
+                Path file = files.take();
+                try {
+                    int count = parse(file, part -> {
+                        pendingParts.incrementAndGet();
+                        parts.put(part);
+                    });
+                    if (count > 0) {
+                        partCounts.put(file, count);
+                    }
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Extract the text of a file into document parts passed to the sink, returning their
+     * number. A file that fails part way keeps the parts extracted before the failure.
+     */
+    private int parse(Path file, PartSink sink) throws InterruptedException {
+        PartHandler handler = null;
+        try {
+            long size = Files.size(file);
+            if (size > maxFileSize) {
+                filesSkipped.incrementAndGet();
+                log.warn("Skipping {}: {} bytes, over the {} bytes limit", file, size, maxFileSize);
+                return 0;
+            }
+
+            Metadata metadata = new Metadata();
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, file.getFileName().toString());
+            handler = new PartHandler(file, metadata, sink);
+            try (TikaInputStream in = TikaInputStream.get(file, metadata)) {
+                parser.parse(in, new BodyContentHandler(handler), metadata, new ParseContext());
+            }
+            handler.finish();
+            filesParsed.incrementAndGet();
+            if (handler.parts == 0) {
+                log.warn("No text extracted from {} ({})", file, metadata.get(Metadata.CONTENT_TYPE));
+            } else {
+                log.debug("Extracted {} parts from {}", handler.parts, file);
+            }
+        } catch (IOException | TikaException e) {
+            filesSkipped.incrementAndGet();
+            log.error("Error parsing {}: {}", file, e.getMessage());
+        } catch (SAXException e) {
+            if (e.getCause() instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            filesSkipped.incrementAndGet();
+            log.error("Error parsing {}: {}", file, e.getMessage());
+        }
+        return handler != null ? handler.parts : 0;
+    }
+
+    /**
+     * Commit the parts as they come, in batches of whatever is queued, up to the batch size
+     */
+    private void indexParts() {
+        List<Document> batch = new ArrayList<>(Math.min(batchSize, 10_000));
+        try {
+            while (true) {
+                batch.add(parts.take());
+                parts.drainTo(batch, batchSize - 1);
+                int count = batch.size();
+                try {
+                    ingestionService.commit(batch);
+                    partsIndexed.addAndGet(count);
+                    log.debug("Indexed {} document parts from {}", count, directory);
+                } catch (RuntimeException e) {
+                    log.error("Could not index {} document parts: {}", count, e.getMessage());
+                    batch.clear();
+                } finally {
+                    pendingParts.addAndGet(-count);
+                }
+                if (idle()) {
+                    log.info("Ingested {}: {} files parsed, {} skipped, {} document parts indexed",
+                        directory, filesParsed.get(), filesSkipped.get(), partsIndexed.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether all the files queued so far are parsed and their parts indexed. The parts of a
+     * file are all counted before the file stops being pending.
+     */
+    private boolean idle() {
+        return pending.get() == 0 && pendingParts.get() == 0;
+    }
+
+    /**
+     * Walk the directory, then apply its changes as they come. Directories are registered
+     * before the walk, so that no change is missed in between, but changes are only applied
+     * once the files of the walk are indexed, so that they are not indexed twice.
+     */
+    private void watch() {
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            Map<WatchKey, Path> keys = new HashMap<>();
+            register(directory, watchService, keys);
+            walk();
+            long pollMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(debounceNanos));
+            while (!idle()) {
+                Thread.sleep(pollMillis);
+            }
+            log.info("Watching {} for changes", directory);
+
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                // Until no event comes for the debounce period, or for at most 10 periods
+                // while a file keeps changing
+                long deadline = System.nanoTime() + 10 * debounceNanos;
+                while (key != null) {
+                    overflow |= collect(key, keys, watchService, changed);
+                    long wait = Math.min(debounceNanos, deadline - System.nanoTime());
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : null;
+                }
+                if (overflow) {
+                    // Events were lost: check every file, indexed or not
+                    changed.addAll(partCounts.keySet());
+                    changed.addAll(listFiles(directory));
+                }
+                apply(changed);
+            }
+        } catch (IOException e) {
+            log.error("Could not watch ingestion directory {}: {}", directory, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Register a directory and its subdirectories with the watch service
+     */
+    private void register(Path root, WatchService watchService, Map<WatchKey, Path> keys) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+            }
+        }
+    }
+
+    /**
+     * Add the paths changed by the events of a key, registering new directories and adding
+     * their files, which may have been created before they were registered. Returns whether
+     * events were lost.
+     */
+    private boolean collect(WatchKey key, Map<WatchKey, Path> keys, WatchService watchService, Set<Path> changed)
+            throws IOException {
+        boolean overflow = false;
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path, watchService, keys);
+                changed.addAll(listFiles(path));
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    private List<Path> listFiles(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(this::accepts).toList();
+        }
+    }
+
+    /**
+     * Parse the changed files again and replace their previous parts with the new ones, in a
+     * single update of the store. A path that no longer exists removes the parts of the file,
+     * or of all the files of the directory, it was.
+     */
+    private void apply(Set<Path> changed) throws InterruptedException {
+        List<Document> documents = new ArrayList<>();
+        Set<String> deletedIds = new HashSet<>();
+        Map<Path, Integer> counts = new HashMap<>();
+        for (Path path : changed) {
+            if (Files.isDirectory(path)) {
+                continue;
+            }
+            boolean exists = Files.exists(path);
+            for (Path file : partCounts.keySet()) {
+                if (file.equals(path) || (!exists && file.startsWith(path))) {
+                    for (int part = 0; part < partCounts.get(file); part++) {
+                        deletedIds.add(partId(file, part));
+                    }
+                    counts.put(file, 0);
+                }
+            }
+            if (accepts(path)) {
+                int before = documents.size();
+                parse(path, documents::add);
+                counts.put(path, documents.size() - before);
+            }
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        try {
+            ingestionService.update(documents, deletedIds);
+        } catch (RuntimeException e) {
+            log.error("Could not apply the changes of {} files: {}", counts.size(), e.getMessage());
+            return;
+        }
+        counts.forEach((file, count) -> {
+            if (count > 0) {
+                partCounts.put(file, count);
+            } else {
+                partCounts.remove(file);
+            }
+        });
+        log.info("Applied changes of {} files in {}: {} document parts removed, {} added",
+            counts.size(), directory, deletedIds.size(), documents.size());
+    }
+
+    /**
+     * Id of a part of a file, stable across parses so that new parts replace the previous ones
+     */
+    private String partId(Path file, int part) {
+        return directory.relativize(file) + "#" + part;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Destination of the parts of a file: the queue of the indexer, or the list of an update
+     */
+    @FunctionalInterface
+    private interface PartSink {
+        void accept(Document part) throws InterruptedException;
+    }
+
+    /**
+     * Receives the body text of a file and passes it to the sink as documents of at most
+     * partSize characters, cut at whitespace so that words are not split between parts
+     */
+    private final class PartHandler extends DefaultHandler {
+        private final Path file;
+        private final Metadata metadata;
+        private final PartSink sink;
+        private final LocalDate date;
+        private final StringBuilder text = new StringBuilder();
+        private int parts;
+
+        PartHandler(Path file, Metadata metadata, PartSink sink) throws IOException {
+            this.file = file;
+            this.metadata = metadata;
+            this.sink = sink;
+            this.date = LocalDate.ofInstant(Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault());
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            while (length > 0) {
+                int chunk = Math.min(length, partSize - text.length());
+                text.append(ch, start, chunk);
+                start += chunk;
+                length -= chunk;
+                if (text.length() == partSize) {
+                    emit(cut());
+                }
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            characters(ch, start, length);
+        }
+
+        void finish() throws SAXException {
+            emit(text.length());
+        }
+
+        /**
+         * End of the next part: after the last whitespace of the buffer, unless it is in the
+         * first half, to keep parts large when the text has long runs without any
+         */
+        private int cut() {
+            for (int i = text.length() - 1; i >= partSize / 2; i--) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i + 1;
+                }
+            }
+            return text.length();
+        }
+
+        private void emit(int end) throws SAXException {
+            String content = text.substring(0, end).strip();
+            text.delete(0, end);
+            if (content.isEmpty()) {
+                return;
+            }
+            try {
+                sink.accept(document(content));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException("Interrupted while waiting for room in the queue", e);
+            }
+        }
+
+        private Document document(String content) {
+            Path relative = directory.relativize(file);
+            Path parent = relative.getParent();
+            String title = metadata.get(TikaCoreProperties.TITLE);
+            if (title == null || title.isBlank()) {
+                title = file.getFileName().toString();
+            }
+            int part = parts++;
+            return Document.builder()
+                .id(partId(file, part))
+                .title(part == 0 ? title : title + " (part " + (part + 1) + ")")
+                .content(content)
+                .date(date)
+                .version(YearMonth.from(date).toString())
+                .category(parent != null ? parent.toString() : DEFAULT_CATEGORY)
+                .build();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.IngestionResponse;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Streaming document ingestion.
+ *
+ * Reads either a JSON array of documents or newline-delimited JSON (one document per line)
+ * with a Jackson {@link JsonParser}, one record at a time, so the request body is never held
+ * in memory. Documents are indexed in batches: each batch becomes visible to searches at once.
+ * With embeddings enabled, each batch is embedded before it is indexed.
+ */
+@Slf4j
+@Service
+public class DocumentIngestionService {
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    @Value("${rag.ingestion.batch-size:1000}")
+    private int defaultBatchSize;
+
+    private final ObjectMapper objectMapper;
+    private final SimpleVectorStore vectorStore;
+    private final EmbeddingService embeddingService;
+
+    public DocumentIngestionService(ObjectMapper objectMapper, SimpleVectorStore vectorStore,
+                                    EmbeddingService embeddingService) {
+        this.objectMapper = objectMapper;
+        this.vectorStore = vectorStore;
+        this.embeddingService = embeddingService;
+    }
+
+    /**
+     * Ingest documents from a stream, committing them every batchSize documents (default when null)
+     */
+    public IngestionResponse ingest(InputStream body, Integer batchSize) throws IOException {
+        int size = batchSize != null && batchSize > 0 ? batchSize : defaultBatchSize;
+        long start = System.nanoTime();
+
+        List<Document> batch = new ArrayList<>(Math.min(size, 10_000));
+        List<String> errors = new ArrayList<>();
+        int indexed = 0;
+        int rejected = 0;
+        int batches = 0;
+        int record = 0;
+        String failure = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken first = parser.nextToken();
+            boolean array = first == JsonToken.START_ARRAY;
+            JsonToken token = array ? parser.nextToken() : first;
+
+            // In NDJSON mode the documents are consecutive root-level values
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a document object but found " + token);
+                }
+
+                // Read one record as a tree so that a record with invalid fields can be skipped
+                JsonNode node = parser.readValueAsTree();
+                String problem;
+                Document document = null;
+                try {
+                    document = objectMapper.treeToValue(node, Document.class);
+                    problem = validate(document);
+                } catch (JsonMappingException e) {
+                    problem = e.getOriginalMessage();
+                }
+
+                if (problem == null) {
+                    batch.add(document);
+                } else {
+                    rejected++;
+                    addError(errors, "Record " + record + ": " + problem);
+                }
+                record++;
+
+                if (batch.size() >= size) {
+                    indexed += commit(batch);
+                    batches++;
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            failure = "Invalid JSON after record " + record + ": " + e.getOriginalMessage();
+            addError(errors, failure);
+        } finally {
+            // Documents parsed before an error are still valid
+            if (!batch.isEmpty()) {
+                indexed += commit(batch);
+                batches++;
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        double documentsPerSecond = elapsedNanos > 0 ? indexed * 1_000_000_000.0 / elapsedNanos : 0.0;
+        log.info("Ingested {} documents ({} rejected) in {} batches, {} docs/s",
+                indexed, rejected, batches, Math.round(documentsPerSecond));
+
+        return IngestionResponse.builder()
+                .status(failure == null ? "ok" : "error")
+                .documentsIndexed(indexed)
+                .documentsRejected(rejected)
+                .batches(batches)
+                .elapsedMs(elapsedNanos / 1_000_000)
+                .documentsPerSecond(documentsPerSecond)
+                .errors(errors.isEmpty() ? null : errors)
+                .error(failure)
+                .build();
+    }
+
+    /**
+     * Index a batch, embedding it first when enabled, and clear it; returns its size
+     */
+    int commit(List<Document> batch) {
+        int count = batch.size();
+        if (embeddingService.enabled()) {
+            vectorStore.addDocuments(batch, embeddingService.embedDocuments(batch));
+        } else {
+            vectorStore.addDocuments(batch);
+        }
+        batch.clear();
+        return count;
+    }
+
+    /**
+     * Replace documents in a single step, embedding the new ones first when enabled: see
+     * {@link SimpleVectorStore#updateDocuments(List, Collection)}
+     */
+    void update(List<Document> documents, Collection<String> deletedIds) {
+        if (embeddingService.enabled() && !documents.isEmpty()) {
+            vectorStore.updateDocuments(documents, embeddingService.embedDocuments(documents), deletedIds);
+        } else {
+            vectorStore.updateDocuments(documents, deletedIds);
+        }
+    }
+
+    /**
+     * Delete the documents with an id; returns false if there was none
+     */
+    public boolean delete(String id) {
+        return vectorStore.deleteDocument(id);
+    }
+
+    /**
+     * Check the fields the query pipeline relies on; returns the problem or null
+     */
+    private String validate(Document document) {
+        if (document.getTitle() == null || document.getTitle().isBlank()) {
+            return "title is required";
+        }
+        if (document.getContent() == null || document.getContent().isBlank()) {
+            return "content is required";
+        }
+        if (document.getDate() == null) {
+            return "date is required";
+        }
+        if (document.getCategory() == null || document.getCategory().isBlank()) {
+            return "category is required";
+        }
+        if (document.getId() == null) {
+            return "id must not be null";
+        }
+        return null;
+    }
+
+    private void addError(List<String> errors, String error) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(error);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.embedding.EmbeddingCache;
+import com.bonitasoft.ai.ragagent.embedding.EmbeddingModel;
+import com.bonitasoft.ai.ragagent.embedding.OnnxEmbeddingModel;
+import com.bonitasoft.ai.ragagent.model.Document;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dense embeddings of queries and documents, computed by a local model.
+ *
+ * Texts are not sent to the model one at a time: every caller queues its texts, and worker
+ * threads take them from the queue in micro-batches of up to {@code batch-size} texts, waiting
+ * at most {@code max-wait} for a batch to fill. Concurrent queries thereby share inference
+ * calls, and ingested documents are embedded a full batch at a time. Queued queries are taken
+ * before queued documents, so a query waits for the batch being run, not for every document
+ * ingested before it; documents are embedded whenever no query is waiting. Document embeddings
+ * are kept in a persistent {@link EmbeddingCache}, so documents already embedded are not
+ * embedded again when the agent restarts.
+ *
+ * Disabled unless {@code rag.embeddings.enabled} is set, with a model directory.
+ */
+@Slf4j
+@Service
+public class EmbeddingService {
+
+    private final EmbeddingModel model;
+    private final EmbeddingCache cache;
+    private final int batchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<Request> queue = new PriorityBlockingQueue<>(64, Request.QUERIES_FIRST);
+    private final AtomicLong queued = new AtomicLong();
+    private final List<Thread> workers = new ArrayList<>();
+
+    public EmbeddingService(@Value("${rag.embeddings.enabled:false}") boolean enabled,
+                            @Value("${rag.embeddings.model-path:}") String modelPath,
+                            @Value("${rag.embeddings.max-tokens:256}") int maxTokens,
+                            @Value("${rag.embeddings.batch-size:32}") int batchSize,
+                            @Value("${rag.embeddings.max-wait:5ms}") Duration maxWait,
+                            @Value("${rag.embeddings.threads:1}") int threads,
+                            @Value("${rag.embeddings.intra-op-threads:0}") int intraOpThreads,
+                            @Value("${rag.embeddings.cache-path:}") String cachePath) throws IOException {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWaitNanos = maxWait.toNanos();
+        if (!enabled) {
+            this.model = null;
+            this.cache = null;
+            return;
+        }
+        if (modelPath.isBlank()) {
+            throw new IllegalStateException("rag.embeddings.model-path is required when embeddings are enabled");
+        }
+
+        Path modelDirectory = Path.of(modelPath);
+        this.model = OnnxEmbeddingModel.load(modelDirectory, maxTokens, intraOpThreads);
+        this.cache = cachePath.isBlank() ? null
+            : EmbeddingCache.open(Path.of(cachePath), model.dimension(), fingerprint(modelDirectory, maxTokens));
+
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            Thread worker = new Thread(this::runBatches, "rag-embedding-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Service without a model, for callers that do not use embeddings
+     */
+    public static EmbeddingService disabled() {
+        try {
+            return new EmbeddingService(false, "", 0, 1, Duration.ZERO, 0, 0, "");
+        } catch (IOException e) {
+            // Nothing is loaded when disabled
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean enabled() {
+        return model != null;
+    }
+
+    /**
+     * Embed a query, batched with the queries and documents queued at the same time
+     */
+    public float[] embedQuery(String query) {
+        return embedAll(List.of(query), true).get(0);
+    }
+
+    /**
+     * Embed several queries, in the same order
+     */
+    public List<float[]> embedQueries(List<String> queries) {
+        return embedAll(queries, true);
+    }
+
+    /**
+     * Embed documents, in the same order. Cached embeddings are reused; the others are computed
+     * and added to the cache.
+     */
+    public List<float[]> embedDocuments(List<Document> documents) {
+        float[][] embeddings = new float[documents.size()][];
+        List<Integer> missing = new ArrayList<>();
+        List<ByteBuffer> keys = new ArrayList<>(documents.size());
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                ByteBuffer key = EmbeddingCache.key(text(documents.get(i)));
+                keys.add(key);
+                embeddings[i] = cache != null ? cache.get(key) : null;
+                if (embeddings[i] == null) {
+                    missing.add(i);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                // Texts of similar lengths end up in the same batches, with less padding
+                missing.sort(Comparator.comparingInt(i -> documents.get(i).getContent().length()));
+                List<String> texts = new ArrayList<>(missing.size());
+                for (int i : missing) {
+                    texts.add(text(documents.get(i)));
+                }
+                List<float[]> computed = embedAll(texts, false);
+                for (int j = 0; j < missing.size(); j++) {
+                    int i = missing.get(j);
+                    embeddings[i] = computed.get(j);
+                    if (cache != null) {
+                        cache.put(keys.get(i), embeddings[i]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Embedding cache error: " + e.getMessage(), e);
+        }
+
+        log.debug("Embedded {} documents, {} from cache", documents.size(), documents.size() - missing.size());
+        return List.of(embeddings);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        workers.forEach(Thread::interrupt);
+        // Let a running inference finish before the model is released
+        for (Thread worker : workers) {
+            worker.join(10_000);
+        }
+        if (model != null) {
+            model.close();
+        }
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Queue the texts, as queries or as documents, and wait for their embeddings
+     */
+    private List<float[]> embedAll(List<String> texts, boolean query) {
+        if (model == null) {
+            throw new IllegalStateException("Embeddings are disabled");
+        }
+
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            Request request = new Request(text, query, queued.getAndIncrement());
+            futures.add(request.result);
+            queue.add(request);
+        }
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        try {
+            for (CompletableFuture<float[]> future : futures) {
+                embeddings.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+        return embeddings;
+    }
+
+    /**
+     * Worker loop: take the first queued text, queries first, wait up to max-wait for the batch
+     * to fill, run it
+     */
+    private void runBatches() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < batchSize) {
+                    // Take what is already queued without waiting, then wait for the rest
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                run(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(List<Request> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            texts.add(request.text);
+        }
+        try {
+            List<float[]> embeddings = model.embed(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(embeddings.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.error("Embedding a batch of {} texts failed", batch.size(), e);
+            batch.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Text embedded for a document
+     */
+    private static String text(Document document) {
+        return document.getTitle() + "\n" + document.getContent();
+    }
+
+    /**
+     * Identifies the model and the settings affecting its output, to invalidate the cache
+     */
+    private static String fingerprint(Path modelDirectory, int maxTokens) throws IOException {
+        Path modelFile = modelDirectory.resolve("model.onnx").toAbsolutePath();
+        return modelFile + ":" + Files.size(modelFile) + ":" + Files.getLastModifiedTime(modelFile).toMillis()
+            + ":" + maxTokens;
+    }
+
+    private static final class Request {
+        // Queries before documents, each in the order they were queued
+        static final Comparator<Request> QUERIES_FIRST = Comparator
+                .comparing((Request request) -> !request.query)
+                .thenComparingLong(request -> request.sequence);
+
+        final String text;
+        final boolean query;
+        final long sequence;
+        final CompletableFuture<float[]> result = new CompletableFuture<>();
+
+        Request(String text, boolean query, long sequence) {
+            this.text = text;
+            this.query = query;
+            this.sequence = sequence;
+        }
+    }
+}
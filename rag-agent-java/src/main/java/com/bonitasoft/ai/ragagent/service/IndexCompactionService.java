@@ -0,0 +1,71 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background compaction of the vector store
+ *
+ * Deleting documents only tombstones them, leaving the IDF and normalization weights of the
+ * index as they were. Every interval, a single thread replaces them with fresh ones if
+ * documents were deleted since, and once the passages of deleted documents pass the configured
+ * ratio of the index, rebuilds the segments holding them without their postings; see
+ * {@link SimpleVectorStore#compact(double)}. It then computes the weights of the current
+ * index, if no search did since the last write, so that searches rarely wait for them.
+ */
+@Slf4j
+@Service
+public class IndexCompactionService {
+
+    private final SimpleVectorStore vectorStore;
+    private final double deletedRatio;
+    // Null when compaction is disabled
+    private final ScheduledExecutorService compactor;
+
+    public IndexCompactionService(SimpleVectorStore vectorStore,
+                                  @Value("${rag.vector-store.compaction.deleted-ratio:0.2}") double deletedRatio,
+                                  @Value("${rag.vector-store.compaction.interval:10s}") Duration interval) {
+        if (!(deletedRatio > 0 && deletedRatio <= 1)) {
+            throw new IllegalArgumentException(
+                "rag.vector-store.compaction.deleted-ratio must be in (0, 1]: " + deletedRatio);
+        }
+        this.vectorStore = vectorStore;
+        this.deletedRatio = deletedRatio;
+
+        if (interval.isZero() || interval.isNegative()) {
+            this.compactor = null;
+            return;
+        }
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rag-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        this.compactor.scheduleWithFixedDelay(this::compact, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+    }
+
+    private void compact() {
+        // An exception would cancel the next runs
+        try {
+            vectorStore.compact(deletedRatio);
+            vectorStore.weigh();
+        } catch (RuntimeException e) {
+            log.error("Index compaction failed", e);
+        }
+    }
+}
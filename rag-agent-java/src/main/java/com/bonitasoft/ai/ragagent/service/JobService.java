@@ -0,0 +1,281 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import com.bonitasoft.ai.ragagent.model.JobResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous RAG jobs
+ *
+ * Queries are queued on a bounded executor and their results kept for a retention period,
+ * to be polled with their job id. Callers do not hold a connection or a thread while a query
+ * waits or runs, so the number of requests in flight is bounded by the queue capacity rather
+ * than by threads. When the queue is full, submissions are rejected instead of piling up.
+ * A job can also name a callback URL, to which its final state is posted once it completes.
+ * Callback URLs must fall under one of the configured allowed URLs, so that clients cannot
+ * make this service post to any host it can reach; with none configured, callbacks are refused.
+ *
+ * With virtual threads enabled, each job runs on its own virtual thread instead of a fixed
+ * pool, and only the number of jobs in flight (threads plus queue capacity) is bounded.
+ */
+@Slf4j
+@Service
+public class JobService {
+
+    private static final Duration CALLBACK_TIMEOUT = Duration.ofSeconds(10);
+
+    private final RagService ragService;
+    private final ObjectMapper objectMapper;
+    private final long retentionMillis;
+
+    private final ExecutorService executor;
+    // Admission control of the virtual thread executor, null with the platform thread pool
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService purger;
+    private final HttpClient callbackClient;
+    // Prefixes of the URLs jobs may be posted to, normalized
+    private final List<URI> allowedCallbackUrls;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobService(RagService ragService,
+                      ObjectMapper objectMapper,
+                      @Value("${rag.jobs.threads:4}") int threads,
+                      @Value("${rag.jobs.queue-capacity:1000}") int queueCapacity,
+                      @Value("${rag.jobs.retention:10m}") Duration retention,
+                      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                      @Value("${rag.jobs.callback-allowed-urls:}") List<String> allowedCallbackUrls) {
+        this.ragService = ragService;
+        this.objectMapper = objectMapper;
+        this.retentionMillis = retention.toMillis();
+
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-job-", 1).factory());
+            this.inFlight = new Semaphore(threads + queueCapacity);
+        } else {
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory("rag-job-"), new ThreadPoolExecutor.AbortPolicy());
+            this.inFlight = null;
+        }
+        this.purger = Executors.newSingleThreadScheduledExecutor(threadFactory("rag-job-purger-"));
+        long purgeInterval = Math.max(1000L, retentionMillis / 2);
+        this.purger.scheduleWithFixedDelay(this::purgeExpired, purgeInterval, purgeInterval, TimeUnit.MILLISECONDS);
+        this.allowedCallbackUrls = allowedCallbackUrls.stream()
+            .filter(url -> !url.isBlank())
+            .map(url -> URI.create(url.strip()).normalize())
+            .toList();
+        for (URI url : this.allowedCallbackUrls) {
+            if (!isHttp(url) || url.getHost() == null) {
+                throw new IllegalArgumentException("rag.jobs.callback-allowed-urls must be http or https URLs: " + url);
+            }
+        }
+        // Not following redirects, which could lead callbacks out of the allowed URLs
+        HttpClient.Builder callbackClient = HttpClient.newBuilder()
+            .connectTimeout(CALLBACK_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NEVER);
+        if (virtualThreads) {
+            callbackClient.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        this.callbackClient = callbackClient.build();
+    }
+
+    /**
+     * Queue a query, whose final state is posted to callbackUrl if not null
+     *
+     * @throws IllegalArgumentException if the callback URL is not allowed
+     * @throws RejectedExecutionException if too many jobs are already waiting
+     */
+    public JobResponse submit(String question, URI callbackUrl) {
+        URI callback = callbackUrl != null ? callbackUrl.normalize() : null;
+        if (callback != null && !callbackAllowed(callback)) {
+            throw new IllegalArgumentException("callback_url is not allowed: " + callbackUrl);
+        }
+        Job job = new Job(UUID.randomUUID().toString(), question, callback);
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            throw new RejectedExecutionException("Too many jobs in flight");
+        }
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            release();
+            throw e;
+        }
+        log.debug("Queued job {}", job.id);
+        return job.toResponse();
+    }
+
+    /**
+     * Current state of a job, or null if it is unknown or its result has expired
+     */
+    public JobResponse status(String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null ? job.toResponse() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        job.status = "running";
+        try {
+            job.result = ragService.processQuery(job.question);
+            job.completedAt = Instant.now();
+            job.status = "done";
+        } catch (Exception e) {
+            log.error("Job {} failed", job.id, e);
+            job.error = e.getMessage();
+            job.completedAt = Instant.now();
+            job.status = "failed";
+        } finally {
+            release();
+        }
+
+        if (job.callbackUrl != null) {
+            sendCallback(job);
+        }
+    }
+
+    /**
+     * Post the final state of the job to its callback URL, without waiting for the answer
+     */
+    private void sendCallback(Job job) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(job.toResponse());
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize job {} for its callback", job.id, e);
+            return;
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(job.callbackUrl)
+            .timeout(CALLBACK_TIMEOUT)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        callbackClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    log.warn("Callback of job {} to {} failed: {}", job.id, job.callbackUrl, error.getMessage());
+                } else if (response.statusCode() >= 300) {
+                    log.warn("Callback of job {} to {} returned HTTP {}", job.id, job.callbackUrl, response.statusCode());
+                }
+            });
+    }
+
+    /**
+     * Whether a normalized URL has the scheme, host and port of an allowed URL, and a path
+     * equal to or below its path
+     */
+    private boolean callbackAllowed(URI url) {
+        if (!isHttp(url) || url.getHost() == null || url.getRawUserInfo() != null) {
+            return false;
+        }
+        for (URI allowed : allowedCallbackUrls) {
+            if (allowed.getScheme().equalsIgnoreCase(url.getScheme())
+                    && allowed.getHost().equalsIgnoreCase(url.getHost())
+                    && port(allowed) == port(url)
+                    && isBelow(url.getRawPath(), allowed.getRawPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHttp(URI url) {
+        return "http".equalsIgnoreCase(url.getScheme()) || "https".equalsIgnoreCase(url.getScheme());
+    }
+
+    private static int port(URI url) {
+        if (url.getPort() >= 0) {
+            return url.getPort();
+        }
+        return "https".equalsIgnoreCase(url.getScheme()) ? 443 : 80;
+    }
+
+    /**
+     * Whether a path is the parent path or one of its descendants: "/hooks" allows "/hooks/job"
+     * but not "/hooks-admin"
+     */
+    private static boolean isBelow(String path, String parent) {
+        if (parent == null || parent.isEmpty() || parent.equals("/")) {
+            return true;
+        }
+        String child = path != null ? path : "";
+        return child.equals(parent) || child.startsWith(parent.endsWith("/") ? parent : parent + "/");
+    }
+
+    private void release() {
+        if (inFlight != null) {
+            inFlight.release();
+        }
+    }
+
+    private void purgeExpired() {
+        Instant expiry = Instant.now().minusMillis(retentionMillis);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(expiry));
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Job state, written by the thread running it and read by pollers
+     */
+    private static class Job {
+        final String id;
+        final String question;
+        final URI callbackUrl;
+        final Instant submittedAt = Instant.now();
+
+        volatile String status = "queued";
+        volatile AgentResponse result;
+        volatile String error;
+        volatile Instant completedAt;
+
+        Job(String id, String question, URI callbackUrl) {
+            this.id = id;
+            this.question = question;
+            this.callbackUrl = callbackUrl;
+        }
+
+        JobResponse toResponse() {
+            // Read the status first: the other fields are written before it
+            String currentStatus = status;
+            return JobResponse.builder()
+                .jobId(id)
+                .status(currentStatus)
+                .submittedAt(submittedAt)
+                .completedAt(completedAt)
+                .result(result)
+                .error(error)
+                .build();
+        }
+    }
+}
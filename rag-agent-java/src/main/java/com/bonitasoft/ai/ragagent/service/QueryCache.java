@@ -0,0 +1,172 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.AgentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of query responses, keyed on the query and the number of sources. The query
+ * is whatever determines the results on one index version: the terms of the question with
+ * TF-IDF, its text with dense retrieval.
+ *
+ * Entries are evicted least recently used first once the cache is full, and expire after
+ * a fixed time to live. All entries are dropped as soon as a lookup is made for another
+ * index version, so a response is never served from an index that has since changed.
+ * Hits, misses and evictions are published as the standard {@code cache.*} meters with
+ * the {@code cache=rag-query} tag.
+ */
+@Slf4j
+@Component
+public class QueryCache {
+
+    private static final String CACHE_NAME = "rag-query";
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    // Guarded by this
+    private final LinkedHashMap<Key, Entry> entries;
+    private long version = -1;
+
+    public QueryCache(@Value("${rag.query-cache.enabled:true}") boolean enabled,
+                      @Value("${rag.query-cache.max-entries:1000}") int maxEntries,
+                      @Value("${rag.query-cache.ttl:10m}") Duration ttl,
+                      MeterRegistry registry) {
+        this.enabled = enabled && maxEntries > 0;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+
+        this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit")
+            .description("Query cache lookups").register(registry);
+        this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss")
+            .description("Query cache lookups").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME)
+            .description("Query responses evicted because the cache was full").register(registry);
+
+        // Access-ordered, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, QueryCache.Entry> eldest) {
+                if (size() > QueryCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("cache.size", this, QueryCache::size).tag("cache", CACHE_NAME)
+            .description("Number of cached query responses").register(registry);
+    }
+
+    /**
+     * Return the cached response for this query on this index version, or compute and cache it.
+     * The response is computed outside of the cache lock; concurrent misses on the same key
+     * may both compute it.
+     */
+    public AgentResponse get(long indexVersion, Object query, int maxSources, Supplier<AgentResponse> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        AgentResponse response = getIfPresent(indexVersion, query, maxSources);
+        if (response == null) {
+            response = loader.get();
+            put(indexVersion, query, maxSources, response);
+        }
+        return response;
+    }
+
+    /**
+     * Return the cached response for this query on this index version, or null, counting a hit or a miss
+     */
+    public AgentResponse getIfPresent(long indexVersion, Object query, int maxSources) {
+        if (!enabled) {
+            return null;
+        }
+
+        Key key = new Key(query, maxSources);
+        synchronized (this) {
+            invalidateIfStale(indexVersion);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.createdNanos < ttlNanos) {
+                    hits.increment();
+                    return entry.response;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache the response computed for this query on this index version
+     */
+    public void put(long indexVersion, Object query, int maxSources, AgentResponse response) {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            // Skip responses computed while the index changed under us
+            if (indexVersion == version) {
+                entries.put(new Key(query, maxSources), new Entry(response, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Number of cached responses
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drop all cached responses
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void invalidateIfStale(long indexVersion) {
+        if (indexVersion != version) {
+            if (!entries.isEmpty()) {
+                log.debug("Index changed from version {} to {}, dropping {} cached responses",
+                    version, indexVersion, entries.size());
+                entries.clear();
+            }
+            version = indexVersion;
+        }
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final Object query;
+        private final int maxSources;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final AgentResponse response;
+        private final long createdNanos;
+    }
+}
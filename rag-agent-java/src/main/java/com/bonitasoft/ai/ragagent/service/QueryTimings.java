@@ -0,0 +1,77 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent by a query in each stage of retrieval, accumulated across index segments.
+ * Filled by the thread running the query; not thread-safe.
+ */
+public final class QueryTimings {
+
+    /**
+     * Stages of a query, in the order they run
+     */
+    public enum Stage {
+        // Query tokenization and TF-IDF weighting
+        TOKENIZE("tokenize"),
+        // Query embedding by the local model, when dense retrieval is enabled
+        EMBED("embed"),
+        // Reading the postings of the query terms into candidate sets
+        CANDIDATES("candidates"),
+        // Cosine similarity of the candidates, kept in the top-K heap, or dense index search
+        SCORING("scoring"),
+        // Draining the heap into the ranked results
+        TOP_K("topK"),
+        CONFLICTS("conflicts"),
+        // JSON serialization of the response, after it has been built
+        SERIALIZATION("serialization");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long[] nanos = new long[STAGES.length];
+    private final boolean[] recorded = new boolean[STAGES.length];
+
+    /**
+     * Add time spent in a stage
+     */
+    public void add(Stage stage, long elapsedNanos) {
+        nanos[stage.ordinal()] += elapsedNanos;
+        recorded[stage.ordinal()] = true;
+    }
+
+    /**
+     * Whether the query went through a stage, e.g. retrieval stages are skipped on a cache hit
+     */
+    public boolean recorded(Stage stage) {
+        return recorded[stage.ordinal()];
+    }
+
+    public long nanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    /**
+     * Milliseconds spent in each stage the query went through, in stage order
+     */
+    public Map<String, Double> toMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for (Stage stage : STAGES) {
+            if (recorded[stage.ordinal()]) {
+                millis.put(stage.label(), Math.round(nanos[stage.ordinal()] / 1_000.0) / 1_000.0);
+            }
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,58 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.service.QueryTimings.Stage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the retrieval path, exported on /actuator/metrics and /actuator/prometheus.
+ *
+ * Each query stage is timed by {@code rag.query.stage}, tagged with the stage name and
+ * published as a histogram so that percentiles can be aggregated across instances. The
+ * size of the index is published by the {@code rag.index.*} gauges, read from the current
+ * snapshot on every scrape.
+ */
+@Component
+public class RagMetrics {
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    public RagMetrics(MeterRegistry registry, SimpleVectorStore vectorStore) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("rag.query.stage")
+                .tag("stage", stage.label())
+                .description("Time spent by queries in each retrieval stage")
+                .publishPercentileHistogram()
+                .register(registry));
+        }
+
+        Gauge.builder("rag.index.documents", vectorStore, SimpleVectorStore::size)
+            .description("Number of indexed documents").register(registry);
+        Gauge.builder("rag.index.terms", vectorStore, SimpleVectorStore::termCount)
+            .description("Number of distinct terms in the term dictionary").register(registry);
+        Gauge.builder("rag.index.vector.bytes", vectorStore, SimpleVectorStore::vectorBytes)
+            .baseUnit("bytes")
+            .description("Memory used by the document vectors").register(registry);
+    }
+
+    /**
+     * Record the stages a query went through
+     */
+    public void record(QueryTimings timings) {
+        for (Stage stage : Stage.values()) {
+            if (timings.recorded(stage)) {
+                record(stage, timings.nanos(stage));
+            }
+        }
+    }
+
+    public void record(Stage stage, long elapsedNanos) {
+        stageTimers.get(stage).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,9 +1,15 @@
 package com.bonitasoft.ai.ragagent.service;
 
+import com.bonitasoft.ai.ragagent.index.QueryTerms;
+import com.bonitasoft.ai.ragagent.index.TokenizedBatch;
 import com.bonitasoft.ai.ragagent.model.AgentResponse;
 import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import com.bonitasoft.ai.ragagent.service.QueryTimings.Stage;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
@@ -12,8 +18,17 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -23,64 +38,381 @@ import java.util.stream.Collectors;
 @Service
 public class RagService {
 
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     @Value("${rag.confidence-threshold:0.65}")
     private double confidenceThreshold;
 
     @Value("${rag.max-sources:5}")
     private int maxSources;
 
+    // Segment file used to skip re-indexing at startup; empty to always rebuild
+    @Value("${rag.index.path:}")
+    private String indexPath;
+
+    // Threads used to parse and tokenize documents at startup; 0 for one per available processor
+    @Value("${rag.loading.parallelism:0}")
+    private int loadingParallelism;
+
+    // In cluster mode, this node only loads the documents of its shard, out of node-count
+    @Value("${rag.cluster.node-count:1}")
+    private int nodeCount;
+
+    @Value("${rag.cluster.node-index:0}")
+    private int nodeIndex;
+
     private final ObjectMapper objectMapper;
     private final SimpleVectorStore vectorStore;
+    private final QueryCache queryCache;
+    private final RagMetrics metrics;
+    private final EmbeddingService embeddingService;
 
-    public RagService(ObjectMapper objectMapper, SimpleVectorStore vectorStore) {
+    public RagService(ObjectMapper objectMapper, SimpleVectorStore vectorStore, QueryCache queryCache,
+                      RagMetrics metrics, EmbeddingService embeddingService) {
         this.objectMapper = objectMapper;
         this.vectorStore = vectorStore;
+        this.queryCache = queryCache;
+        this.metrics = metrics;
+        this.embeddingService = embeddingService;
     }
 
     @PostConstruct
     public void loadDocuments() {
         try {
+            long startTime = System.nanoTime();
             PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-            Resource[] resources = resolver.getResources("classpath:documents/*.json");
+            Resource[] resources = ownedResources(resolver.getResources("classpath:documents/*.json"));
+            long resolvedTime = System.nanoTime();
+
+            // Warm start: map the index saved by a previous run if the documents did not change
+            Path indexFile = indexPath.isBlank() ? null : Path.of(indexPath);
+            String checksum = indexFile != null ? checksum(resources) : null;
+            long checksumTime = System.nanoTime();
+            if (indexFile != null && loadIndex(indexFile, checksum)) {
+                vectorStore.weigh();
+                log.info("Loaded {} documents into vector store from index {}", vectorStore.size(), indexFile);
+                log.info("Startup timings: resolve {} ms, checksum {} ms, index load {} ms, total {} ms",
+                    millis(startTime, resolvedTime), millis(resolvedTime, checksumTime),
+                    millis(checksumTime, System.nanoTime()), millis(startTime, System.nanoTime()));
+                embedDocuments();
+                return;
+            }
 
-            for (Resource resource : resources) {
-                try {
-                    Map<String, Object> docData = objectMapper.readValue(
-                        resource.getInputStream(), 
-                        new TypeReference<Map<String, Object>>() {}
-                    );
-                    
-                    Document doc = Document.builder()
-                        .title((String) docData.get("title"))
-                        .content((String) docData.get("content"))
-                        .date(LocalDate.parse((String) docData.get("date")))
-                        .version((String) docData.get("version"))
-                        .category((String) docData.get("category"))
-                        .build();
-                    
-                    // Add document to vector store
-                    vectorStore.addDocument(doc);
-                    log.info("Loaded document into vector store: {}", doc.getTitle());
-                } catch (Exception e) {
-                    log.error("Error loading document {}: {}", resource.getFilename(), e.getMessage());
-                }
+            // Parse and tokenize in parallel, then merge everything into the index in one step
+            int parallelism = loadingParallelism > 0 ? loadingParallelism : Runtime.getRuntime().availableProcessors();
+            LoadTimings timings = new LoadTimings();
+            List<TokenizedBatch> batches = tokenizeDocuments(resources, parallelism, timings);
+            long tokenizedTime = System.nanoTime();
+
+            vectorStore.addTokenized(batches);
+            // Rather than on the first query
+            vectorStore.weigh();
+            long indexedTime = System.nanoTime();
+            log.info("Loaded {} documents into vector store", vectorStore.size());
+
+            if (indexFile != null) {
+                saveIndex(indexFile, checksum);
             }
-            
-            log.info("Loaded {} documents into vector store", vectorStore.getAllDocuments().size());
+            long endTime = System.nanoTime();
+
+            log.info("Startup timings: resolve {} ms, checksum {} ms, parse and tokenize {} ms on {} threads "
+                    + "(parse {} ms, tokenize {} ms of CPU time), merge and index {} ms, save {} ms, total {} ms",
+                millis(startTime, resolvedTime), millis(resolvedTime, checksumTime),
+                millis(checksumTime, tokenizedTime), parallelism,
+                timings.parseNanos.sum() / 1_000_000, timings.tokenizeNanos.sum() / 1_000_000,
+                millis(tokenizedTime, indexedTime), millis(indexedTime, endTime), millis(startTime, endTime));
+            embedDocuments();
         } catch (IOException e) {
             log.error("Error loading documents: {}", e.getMessage());
         }
     }
 
     /**
-     * Process RAG query with vector search and conflict detection
+     * Documents of this node's shard: all of them, unless the corpus is split over a cluster,
+     * in which case each document goes to a single node by the hash of its file name
+     */
+    private Resource[] ownedResources(Resource[] resources) {
+        if (nodeCount <= 1) {
+            return resources;
+        }
+        if (nodeIndex < 0 || nodeIndex >= nodeCount) {
+            throw new IllegalStateException("rag.cluster.node-index must be between 0 and " + (nodeCount - 1));
+        }
+        Resource[] owned = Arrays.stream(resources)
+            .filter(resource -> Math.floorMod(String.valueOf(resource.getFilename()).hashCode(), nodeCount) == nodeIndex)
+            .toArray(Resource[]::new);
+        log.info("Cluster node {} of {}: loading {} of {} documents", nodeIndex, nodeCount, owned.length, resources.length);
+        return owned;
+    }
+
+    /**
+     * Add the embeddings of the loaded documents to the dense index, when enabled.
+     * Embeddings computed by a previous run are read from the embedding cache.
+     */
+    private void embedDocuments() {
+        if (!embeddingService.enabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Document> documents = vectorStore.getAllDocuments();
+        vectorStore.addEmbeddings(documents, embeddingService.embedDocuments(documents));
+        log.info("Embedded {} documents in {} ms", documents.size(), millis(start, System.nanoTime()));
+    }
+
+    /**
+     * Parse and tokenize the documents on a dedicated pool. Resources are split into a few
+     * chunks per thread, each tokenized into its own batch, and batches are returned in
+     * resource order so that the index does not depend on scheduling.
+     */
+    private List<TokenizedBatch> tokenizeDocuments(Resource[] resources, int parallelism, LoadTimings timings) {
+        int chunks = parallelism * 4;
+        int chunkSize = Math.max(1, (resources.length + chunks - 1) / chunks);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<TokenizedBatch>> tasks = new ArrayList<>();
+            for (int from = 0; from < resources.length; from += chunkSize) {
+                Resource[] chunk = Arrays.copyOfRange(resources, from, Math.min(from + chunkSize, resources.length));
+                tasks.add(pool.submit(() -> tokenizeChunk(chunk, timings)));
+            }
+
+            List<TokenizedBatch> batches = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<TokenizedBatch> task : tasks) {
+                batches.add(task.join());
+            }
+            return batches;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private TokenizedBatch tokenizeChunk(Resource[] chunk, LoadTimings timings) {
+        TokenizedBatch batch = new TokenizedBatch(vectorStore.passageSplitter());
+        for (Resource resource : chunk) {
+            try {
+                long parseStart = System.nanoTime();
+                Document doc = parseDocument(resource);
+                long tokenizeStart = System.nanoTime();
+                batch.add(doc);
+                timings.parseNanos.add(tokenizeStart - parseStart);
+                timings.tokenizeNanos.add(System.nanoTime() - tokenizeStart);
+
+                log.debug("Loaded document: {}", doc.getTitle());
+            } catch (Exception e) {
+                log.error("Error loading document {}: {}", resource.getFilename(), e.getMessage());
+            }
+        }
+        return batch;
+    }
+
+    private Document parseDocument(Resource resource) throws IOException {
+        Map<String, Object> docData;
+        try (InputStream in = resource.getInputStream()) {
+            docData = objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {});
+        }
+
+        return Document.builder()
+            .title((String) docData.get("title"))
+            .content((String) docData.get("content"))
+            .date(LocalDate.parse((String) docData.get("date")))
+            .version((String) docData.get("version"))
+            .category((String) docData.get("category"))
+            .build();
+    }
+
+    private static long millis(long fromNanos, long toNanos) {
+        return (toNanos - fromNanos) / 1_000_000;
+    }
+
+    private boolean loadIndex(Path indexFile, String checksum) {
+        try {
+            if (vectorStore.load(indexFile, checksum)) {
+                return true;
+            }
+            log.info("Index {} missing or out of date, rebuilding it", indexFile);
+        } catch (Exception e) {
+            log.warn("Could not read index {}, rebuilding it: {}", indexFile, e.getMessage());
+        }
+        return false;
+    }
+
+    private void saveIndex(Path indexFile, String checksum) {
+        try {
+            vectorStore.save(indexFile, checksum);
+            log.info("Saved index to {}", indexFile);
+        } catch (IOException e) {
+            log.warn("Could not save index to {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    /**
+     * SHA-256 over the name and content of every source document, and the passage settings
+     * they are split with
+     */
+    private String checksum(Resource[] resources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Resource[] sorted = resources.clone();
+        Arrays.sort(sorted, Comparator.comparing(r -> String.valueOf(r.getFilename())));
+        for (Resource resource : sorted) {
+            digest.update(String.valueOf(resource.getFilename()).getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = resource.getInputStream()) {
+                byte[] chunk = new byte[8192];
+                for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                    digest.update(chunk, 0, read);
+                }
+            }
+        }
+        digest.update(vectorStore.passageSplitter().toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Process RAG query with vector search and conflict detection.
+     * The time spent in each stage is returned in the usage of the response.
      */
     public AgentResponse processQuery(String question) {
         log.info("Processing query: {}", question);
 
+        QueryTimings timings = new QueryTimings();
+        CacheKey key = cacheKey(question, timings);
+        AgentResponse response = queryCache.get(key.version, key.query, maxSources,
+            () -> answer(question, key.terms(), timings));
+        metrics.record(timings);
+        return withTimings(response, timings.toMillis());
+    }
+
+    /**
+     * Process several queries at once, returning their responses in the same order.
+     * Cached responses are served as is; the other queries are retrieved together in a
+     * single pass over the index, and identical ones only once.
+     */
+    public List<AgentResponse> processQueries(List<String> questions) {
+        log.info("Processing batch of {} queries", questions.size());
+
+        QueryTimings timings = new QueryTimings();
+        AgentResponse[] responses = new AgentResponse[questions.size()];
+        CacheKey[] keys = new CacheKey[questions.size()];
+        Map<CacheKey, Integer> pending = new LinkedHashMap<>();
+        for (int i = 0; i < questions.size(); i++) {
+            keys[i] = cacheKey(questions.get(i), timings);
+            if (!pending.containsKey(keys[i])) {
+                responses[i] = queryCache.getIfPresent(keys[i].version, keys[i].query, maxSources);
+                if (responses[i] == null) {
+                    pending.put(keys[i], i);
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            List<String> missed = new ArrayList<>(pending.size());
+            List<QueryTerms> missedTerms = new ArrayList<>(pending.size());
+            for (Map.Entry<CacheKey, Integer> entry : pending.entrySet()) {
+                missed.add(questions.get(entry.getValue()));
+                missedTerms.add(entry.getKey().terms());
+            }
+            List<List<Passage>> results = embeddingService.enabled()
+                ? searchByEmbedding(missed, timings)
+                : vectorStore.searchAll(missed, missedTerms, maxSources, timings);
+
+            int next = 0;
+            for (Map.Entry<CacheKey, Integer> entry : pending.entrySet()) {
+                int i = entry.getValue();
+                responses[i] = buildResponse(questions.get(i), results.get(next++), timings);
+                queryCache.put(entry.getKey().version, entry.getKey().query, maxSources, responses[i]);
+            }
+        }
+
+        // Duplicates of a pending query share its response
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i] == null) {
+                responses[i] = responses[pending.get(keys[i])];
+            }
+        }
+
+        // The stages of a batch run once for all its queries, so they all report the batch timings
+        metrics.record(timings);
+        Map<String, Double> batchTimings = timings.toMillis();
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = withTimings(responses[i], batchTimings);
+        }
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Key of a question in the query cache. With TF-IDF, questions with the same terms on the
+     * same index version get the same response, whatever their word order, case or stop words.
+     * A dense embedding depends on the whole text, so with dense retrieval only questions with
+     * the same text, up to surrounding and repeated whitespace, share a response.
+     */
+    private CacheKey cacheKey(String question, QueryTimings timings) {
+        if (embeddingService.enabled()) {
+            return new CacheKey(vectorStore.version(), WHITESPACE.matcher(question.strip()).replaceAll(" "));
+        }
+        long start = System.nanoTime();
+        QueryTerms terms = vectorStore.queryTerms(question);
+        timings.add(Stage.TOKENIZE, System.nanoTime() - start);
+        return new CacheKey(terms.version(), terms);
+    }
+
+    /**
+     * Answer a question, with its terms as tokenized for the cache key, so that it is not tokenized again
+     */
+    private AgentResponse answer(String question, QueryTerms terms, QueryTimings timings) {
+        if (embeddingService.enabled()) {
+            return buildResponse(question, searchByEmbedding(List.of(question), timings).get(0), timings);
+        }
         // Retrieve relevant documents using vector search
-        List<Document> relevantDocs = vectorStore.search(question, maxSources);
-        log.debug("Found {} relevant documents using vector search", relevantDocs.size());
+        return buildResponse(question, vectorStore.search(question, terms, maxSources, timings), timings);
+    }
+
+    /**
+     * Retrieve the documents closest to each question in the dense index; the questions are
+     * embedded in the same micro-batches as those of concurrent requests. Documents are
+     * embedded whole, so each is returned as a single passage.
+     */
+    private List<List<Passage>> searchByEmbedding(List<String> questions, QueryTimings timings) {
+        long start = System.nanoTime();
+        List<float[]> embeddings = embeddingService.embedQueries(questions);
+        long embedded = System.nanoTime();
+        timings.add(Stage.EMBED, embedded - start);
+
+        List<List<Passage>> results = new ArrayList<>(questions.size());
+        for (float[] embedding : embeddings) {
+            results.add(vectorStore.searchByVector(embedding, maxSources).stream().map(Passage::of).toList());
+        }
+        timings.add(Stage.SCORING, System.nanoTime() - embedded);
+        return results;
+    }
+
+    /**
+     * Copy of a response with per-request stage timings added to its usage. Responses may be
+     * cached and shared between requests, so they are never modified in place.
+     */
+    private static AgentResponse withTimings(AgentResponse response, Map<String, Double> timings) {
+        Map<String, Object> usage = new LinkedHashMap<>(response.getUsage());
+        usage.put("timingsMs", timings);
+        return response.toBuilder().usage(usage).build();
+    }
+
+    private AgentResponse buildResponse(String question, List<Passage> passages, QueryTimings timings) {
+        return buildResponse(question, passages, vectorStore.size(), timings);
+    }
+
+    /**
+     * Response to a question from the best passage of each of the documents retrieved for it,
+     * best first, out of documentsSearched, e.g. by a cluster coordinator from the results of
+     * all its nodes
+     */
+    public AgentResponse buildResponse(String question, List<Passage> passages, long documentsSearched,
+                                       QueryTimings timings) {
+        log.debug("Found {} relevant documents using vector search", passages.size());
+        List<Document> relevantDocs = passages.stream().map(Passage::getDocument).toList();
 
         if (relevantDocs.isEmpty()) {
             return AgentResponse.builder()
@@ -90,16 +422,18 @@ public class RagService {
                     "confidence", 0.0,
                     "sources", List.of()
                 ))
-                .usage(Map.of("documentsSearched", vectorStore.getAllDocuments().size()))
+                .usage(Map.of("documentsSearched", documentsSearched))
                 .build();
         }
 
         // Detect conflicts
+        long conflictStart = System.nanoTime();
         ConflictDetectionResult conflictResult = detectConflicts(relevantDocs, question);
+        timings.add(Stage.CONFLICTS, System.nanoTime() - conflictStart);
 
         // Build response
         Map<String, Object> output = new HashMap<>();
-        output.put("answer", generateAnswer(relevantDocs, conflictResult));
+        output.put("answer", generateAnswer(passages, conflictResult));
         output.put("confidence", calculateConfidence(relevantDocs, conflictResult));
         output.put("sources", buildSources(relevantDocs));
 
@@ -107,7 +441,7 @@ public class RagService {
             .status("ok")
             .output(output)
             .usage(Map.of(
-                "documentsSearched", vectorStore.getAllDocuments().size(),
+                "documentsSearched", documentsSearched,
                 "relevantDocuments", relevantDocs.size()
             ));
 
@@ -164,32 +498,38 @@ public class RagService {
     }
 
     /**
-     * Generate answer from documents
+     * Generate answer from the best passages of the documents
      */
-    private String generateAnswer(List<Document> docs, ConflictDetectionResult conflictResult) {
+    private String generateAnswer(List<Passage> passages, ConflictDetectionResult conflictResult) {
         if (conflictResult.hasConflict) {
             // Use most recent document
-            Document mostRecent = docs.stream()
-                .max(Comparator.comparing(Document::getDate))
-                .orElse(docs.get(0));
+            Passage mostRecent = passages.stream()
+                .max(Comparator.comparing(passage -> passage.getDocument().getDate()))
+                .orElse(passages.get(0));
 
             return extractRelevantContent(mostRecent);
         }
 
         // Use highest scoring document (first in list from vector search)
-        return extractRelevantContent(docs.get(0));
+        return extractRelevantContent(passages.get(0));
     }
 
     /**
-     * Extract relevant content from document
+     * Extract relevant content from the best passage of a document
      */
-    private String extractRelevantContent(Document doc) {
-        // Simple extraction - return first 200 chars
-        String content = doc.getContent();
-        if (content.length() > 200) {
-            return content.substring(0, 200) + "...";
+    private String extractRelevantContent(Passage passage) {
+        // Simple extraction - the first 200 chars of the passage, sliced from the document content
+        String content = passage.getDocument().getContent();
+        int end = Math.min(passage.getEnd(), passage.getStart() + 200);
+        StringBuilder answer = new StringBuilder(end - passage.getStart() + 6);
+        if (passage.getStart() > 0) {
+            answer.append("...");
+        }
+        answer.append(content, passage.getStart(), end);
+        if (end < content.length()) {
+            answer.append("...");
         }
-        return content;
+        return answer.toString();
     }
 
     /**
@@ -238,4 +578,23 @@ public class RagService {
             this.reasoning = reasoning;
         }
     }
+
+    // CPU time spent by the loading threads, summed across threads
+    private static class LoadTimings {
+        final LongAdder parseNanos = new LongAdder();
+        final LongAdder tokenizeNanos = new LongAdder();
+    }
+
+    // Query cached for one index version
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class CacheKey {
+        private final long version;
+        private final Object query;
+
+        // Terms of the question with TF-IDF retrieval, null with dense retrieval
+        QueryTerms terms() {
+            return query instanceof QueryTerms terms ? terms : null;
+        }
+    }
 }
@@ -1,219 +1,1340 @@
 package com.bonitasoft.ai.ragagent.service;
 
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.Bm25Weights;
+import com.bonitasoft.ai.ragagent.index.IndexSnapshot;
+import com.bonitasoft.ai.ragagent.index.Neighbors;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.Passages;
+import com.bonitasoft.ai.ragagent.index.QueryTerms;
+import com.bonitasoft.ai.ragagent.index.ScoreCollector;
+import com.bonitasoft.ai.ragagent.index.Segment;
+import com.bonitasoft.ai.ragagent.index.SegmentFile;
+import com.bonitasoft.ai.ragagent.index.SparseVector;
+import com.bonitasoft.ai.ragagent.index.TermCounter;
+import com.bonitasoft.ai.ragagent.index.TermDictionary;
+import com.bonitasoft.ai.ragagent.index.TokenizedBatch;
+import com.bonitasoft.ai.ragagent.index.Tokenizer;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
 import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import com.bonitasoft.ai.ragagent.model.ScoredDocument;
+import com.bonitasoft.ai.ragagent.model.TermStatistics;
+import com.bonitasoft.ai.ragagent.service.QueryTimings.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 /**
  * Simple in-memory Vector Store implementation
  * Uses TF-IDF for document vectorization and cosine similarity for retrieval
+ *
+ * Text is split by a single-pass {@link Tokenizer} whose terms are looked up in a
+ * {@link TermDictionary} straight from its char buffer, without per-token allocation.
+ * Terms are mapped to int ids by the dictionary.
+ *
+ * Documents are split by a {@link PassageSplitter} into overlapping passages, which are the
+ * unit of the index: each passage is stored as a sparse vector of raw term counts sorted by
+ * term id in a {@link VectorArena}, and searches rank passages, returning the best passage of
+ * each of the top K documents as a span of the document content.
+ *
+ * Concurrency: documents are indexed by a single writer at a time into immutable
+ * {@link Segment}s. Each write builds a new {@link IndexSnapshot} and publishes it with a
+ * single volatile write. Searches read whichever snapshot is current when they start, so
+ * they never block on writers and never observe a partially built index. The IDF weights
+ * and normalization factors of a snapshot depend on the whole corpus: they are not computed
+ * by the write, which stays proportional to the documents added, but once by the first
+ * search of the snapshot, or beforehand by {@link #weigh()}.
+ *
+ * With {@link Bm25} parameters, documents are ranked by BM25 instead of TF-IDF cosine
+ * similarity: each snapshot then also holds its {@link Bm25Weights}, and searches score the
+ * postings of the query terms directly, skipping the documents that cannot make the top K.
+ *
+ * With more than one shard, each search is split by document into shards searched in
+ * parallel, whose top K are merged; see {@link #scatter}.
+ *
+ * Documents are deleted or replaced by id with {@link #deleteDocument(String)} and
+ * {@link #updateDocument(Document)}. Deleted documents are tombstoned in their segments, which
+ * are not rebuilt, and their passages no longer count in the document frequencies; searches
+ * skip them. The IDF and normalization weights are recomputed, and the segments holding many
+ * deleted documents rebuilt without them, by {@link #compact(double)}, run in the background.
+ *
+ * Documents may also be added with a dense embedding, kept in a {@link VectorIndex} next to
+ * the TF-IDF index and searched with {@link #searchByVector(float[], int)}. Embeddings are not
+ * saved in segment files.
  */
 @Slf4j
 @Component
 public class SimpleVectorStore {
 
-    private final List<Document> documents = new ArrayList<>();
-    private final Map<String, Map<String, Double>> tfidfVectors = new HashMap<>();
-    private final Map<String, Integer> documentFrequency = new HashMap<>();
-    private int totalDocuments = 0;
+    // Fewer passages per shard are searched faster on a single thread
+    static final int MIN_SHARD_PASSAGES = 8192;
+
+    private final Supplier<VectorArena> arenaFactory;
+    // Creates the dense index, by dimension, when the first embedding is added
+    private final IntFunction<VectorIndex> vectorIndexFactory;
+    private final int shardCount;
+    // Null for TF-IDF scoring
+    private final Bm25 bm25;
+    private final PassageSplitter passageSplitter;
+    // Searches shards other than the first one; null with a single shard
+    private final ForkJoinPool searchPool;
+
+    // Writer state, guarded by this
+    private TermDictionary dictionary = new TermDictionary();
+
+    private volatile IndexSnapshot snapshot = IndexSnapshot.empty(0, dictionary);
+    private volatile DenseIndex denseIndex;
+
+    public SimpleVectorStore() {
+        this(VectorArena::onHeap);
+    }
+
+    public SimpleVectorStore(Supplier<VectorArena> arenaFactory) {
+        this(arenaFactory, VectorIndex::flat);
+    }
+
+    public SimpleVectorStore(Supplier<VectorArena> arenaFactory, IntFunction<VectorIndex> vectorIndexFactory) {
+        this(arenaFactory, vectorIndexFactory, 1);
+    }
+
+    /**
+     * Store whose searches are split into {@code shards} shards searched in parallel
+     */
+    public SimpleVectorStore(Supplier<VectorArena> arenaFactory, IntFunction<VectorIndex> vectorIndexFactory,
+                             int shards) {
+        this(arenaFactory, vectorIndexFactory, shards, null);
+    }
+
+    /**
+     * Store ranking documents by BM25 with the given parameters, or by TF-IDF if null
+     */
+    public SimpleVectorStore(Supplier<VectorArena> arenaFactory, IntFunction<VectorIndex> vectorIndexFactory,
+                             int shards, Bm25 bm25) {
+        this(arenaFactory, vectorIndexFactory, shards, bm25, PassageSplitter.wholeDocuments());
+    }
+
+    /**
+     * Store indexing the passages of documents split by the given splitter
+     */
+    public SimpleVectorStore(Supplier<VectorArena> arenaFactory, IntFunction<VectorIndex> vectorIndexFactory,
+                             int shards, Bm25 bm25, PassageSplitter passageSplitter) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shards);
+        }
+        this.arenaFactory = arenaFactory;
+        this.vectorIndexFactory = vectorIndexFactory;
+        this.shardCount = shards;
+        this.bm25 = bm25;
+        this.passageSplitter = passageSplitter;
+        // The calling thread searches one of the shards
+        this.searchPool = shards > 1
+            ? new ForkJoinPool(Math.min(shards - 1, Runtime.getRuntime().availableProcessors()))
+            : null;
+    }
+
+    /**
+     * Stop the threads searching shards; searches running on them complete
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (searchPool != null) {
+            searchPool.shutdown();
+        }
+    }
 
     /**
      * Add a document to the vector store
      */
     public void addDocument(Document document) {
-        documents.add(document);
-        totalDocuments++;
-        
-        // Update document frequency
-        Set<String> uniqueTerms = extractTerms(document.getContent());
-        for (String term : uniqueTerms) {
-            documentFrequency.merge(term, 1, Integer::sum);
-        }
-        
-        // Recompute TF-IDF vectors for all documents
-        recomputeTfidfVectors();
-        
+        addDocuments(List.of(document));
+
         log.debug("Added document to vector store: {}", document.getTitle());
     }
 
     /**
-     * Search for similar documents using cosine similarity
+     * Add several documents at once; they are indexed into a single segment and become
+     * visible to searches together
+     */
+    public synchronized void addDocuments(Collection<Document> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Document> documents = new ArrayList<>(batch);
+        Passages passages = new Passages();
+        List<SparseVector> termCounts = new ArrayList<>(documents.size());
+        TermCounter counter = new TermCounter();
+        for (int i = 0; i < documents.size(); i++) {
+            vectorize(i, documents.get(i), passages, termCounts, counter);
+        }
+        append(documents, passages, termCounts);
+    }
+
+    /**
+     * Add documents with their dense embeddings, in the same order. Documents are indexed for
+     * TF-IDF search as by {@link #addDocuments(Collection)}, and their embeddings added to the
+     * dense index; all embeddings must have the same dimension.
+     */
+    public synchronized void addDocuments(List<Document> documents, List<float[]> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException(documents.size() + " documents but " + embeddings.size() + " embeddings");
+        }
+        addDocuments(documents);
+        addEmbeddings(documents, embeddings);
+    }
+
+    /**
+     * Delete the documents with the given id. Returns false if there was none.
+     */
+    public boolean deleteDocument(String id) {
+        return deleteDocuments(List.of(id)) > 0;
+    }
+
+    /**
+     * Delete the documents with any of the given ids, and return how many there were. The
+     * documents are tombstoned and the document frequencies adjusted, without rebuilding any
+     * segment; the weights of the other documents are only updated by the next {@link #compact}.
+     */
+    public synchronized int deleteDocuments(Collection<String> ids) {
+        IndexSnapshot current = snapshot;
+        List<Segment> segments = new ArrayList<>(current.segments());
+        int[] documentFrequency = current.documentFrequency().clone();
+        Set<String> deletedIds = new HashSet<>();
+        int deleted = markDeleted(segments, documentFrequency, new HashSet<>(ids), deletedIds);
+        if (deleted == 0) {
+            return 0;
+        }
+        snapshot = current.withDeletions(current.version() + 1, segments, documentFrequency);
+
+        DenseIndex dense = denseIndex;
+        if (dense != null) {
+            dense.remove(deletedIds);
+        }
+        log.debug("Deleted {} documents from vector store", deleted);
+        return deleted;
+    }
+
+    /**
+     * Replace the documents with the id of a document by that document, or add it
+     */
+    public void updateDocument(Document document) {
+        updateDocuments(List.of(document), List.of());
+    }
+
+    /**
+     * Replace documents in a single step: delete the documents whose id is one of deletedIds
+     * or the id of one of the new documents, then add the new documents. Searches see either
+     * the previous index or the new one, never a state in between.
+     *
+     * Replaced documents are tombstoned as by {@link #deleteDocuments(Collection)}; as new
+     * documents are added, the new snapshot gets weights computed for the whole index.
+     */
+    public synchronized void updateDocuments(List<Document> documents, Collection<String> deletedIds) {
+        Set<String> removedIds = new HashSet<>(deletedIds);
+        for (Document document : documents) {
+            removedIds.add(document.getId());
+        }
+
+        IndexSnapshot current = snapshot;
+        List<Segment> segments = new ArrayList<>(current.segments());
+        int[] documentFrequency = current.documentFrequency().clone();
+        Set<String> foundIds = new HashSet<>();
+        int removed = markDeleted(segments, documentFrequency, removedIds, foundIds);
+
+        Passages passages = new Passages();
+        List<SparseVector> termCounts = new ArrayList<>(documents.size());
+        TermCounter counter = new TermCounter();
+        for (int i = 0; i < documents.size(); i++) {
+            vectorize(i, documents.get(i), passages, termCounts, counter);
+        }
+        append(segments, documentFrequency, documents, passages, termCounts);
+
+        DenseIndex dense = denseIndex;
+        if (dense != null && removed > 0) {
+            dense.remove(foundIds);
+        }
+        log.debug("Updated vector store: {} documents removed, {} added", removed, documents.size());
+    }
+
+    /**
+     * Tombstone the live documents with the given ids, replacing their segments in the list by
+     * copies marking them deleted, and decrement the document frequencies by their passages.
+     * Adds the ids that had live documents to deletedIds, and returns the number of documents
+     * deleted. Called with the lock held.
+     */
+    private int markDeleted(List<Segment> segments, int[] documentFrequency, Set<String> ids,
+                            Set<String> deletedIds) {
+        int deleted = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            BitSet found = new BitSet();
+            for (String id : ids) {
+                if (segment.findLiveDocuments(id, found) > 0) {
+                    deletedIds.add(id);
+                }
+            }
+            if (found.isEmpty()) {
+                continue;
+            }
+
+            for (int d = found.nextSetBit(0); d >= 0; d = found.nextSetBit(d + 1)) {
+                deleted++;
+                for (int ordinal = segment.firstPassage(d), end = segment.firstPassage(d + 1); ordinal < end; ordinal++) {
+                    SparseVector vector = segment.vectors().get(ordinal);
+                    for (int i = 0; i < vector.size(); i++) {
+                        documentFrequency[vector.termId(i)]--;
+                    }
+                }
+            }
+            segments.set(s, segment.withDeletedDocuments(found));
+        }
+        return deleted;
+    }
+
+    /**
+     * Publish a snapshot with fresh weights if documents were deleted since the current weights
+     * were computed, and once more than {@code deletedRatio} of its passages belong to deleted
+     * documents, rebuild the segments above that ratio without them, merging the small ones
+     * that are left into their predecessors. Writers wait for the compaction to end; searches
+     * do not. Returns whether a new snapshot was published.
+     */
+    public synchronized boolean compact(double deletedRatio) {
+        IndexSnapshot current = snapshot;
+        int deletedPassages = current.totalPassages() - current.livePassages();
+        boolean compaction = deletedPassages > 0 && deletedPassages >= deletedRatio * current.totalPassages();
+        if (!compaction && !current.staleWeights()) {
+            return false;
+        }
+
+        List<Segment> segments = new ArrayList<>(current.segments());
+        if (compaction) {
+            for (int s = segments.size() - 1; s >= 0; s--) {
+                Segment segment = segments.get(s);
+                if (segment.deletedPassageCount() > 0
+                        && segment.deletedPassageCount() >= deletedRatio * segment.size()) {
+                    Segment rest = segment.withoutDocuments(new BitSet(), arenaFactory.get());
+                    if (rest != null) {
+                        segments.set(s, rest);
+                    } else {
+                        segments.remove(s);
+                    }
+                }
+            }
+            mergeSegments(segments);
+        }
+        snapshot = IndexSnapshot.of(current.version() + 1, dictionary, segments, current.documentFrequency(), bm25);
+
+        if (compaction) {
+            log.info("Compacted vector store: dropped {} passages of deleted documents, {} segments left",
+                    deletedPassages - (snapshot.totalPassages() - snapshot.livePassages()), segments.size());
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #updateDocuments(List, Collection)}, adding the embeddings of the new
+     * documents, in the same order, to the dense index
+     */
+    public synchronized void updateDocuments(List<Document> documents, List<float[]> embeddings,
+                                             Collection<String> deletedIds) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException(documents.size() + " documents but " + embeddings.size() + " embeddings");
+        }
+        updateDocuments(documents, deletedIds);
+        addEmbeddings(documents, embeddings);
+    }
+
+    /**
+     * Add the dense embeddings of documents already indexed, e.g. loaded from a segment file
+     */
+    public synchronized void addEmbeddings(List<Document> documents, List<float[]> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException(documents.size() + " documents but " + embeddings.size() + " embeddings");
+        }
+
+        DenseIndex dense = denseIndex;
+        for (int i = 0; i < documents.size(); i++) {
+            if (dense == null) {
+                dense = new DenseIndex(vectorIndexFactory.apply(embeddings.get(i).length));
+                denseIndex = dense;
+            }
+            dense.add(documents.get(i), embeddings.get(i));
+        }
+        // Dense search results changed, like those of any other write
+        if (!documents.isEmpty()) {
+            snapshot = snapshot.withVersion(snapshot.version() + 1);
+        }
+    }
+
+    /**
+     * Add batches that were tokenized beforehand, possibly in parallel, as a single segment.
+     * Documents are indexed in the order of the batches, then of their documents. Batches
+     * should split documents with this store's {@link #passageSplitter()}.
+     */
+    public synchronized void addTokenized(List<TokenizedBatch> batches) {
+        List<Document> documents = new ArrayList<>();
+        Passages passages = new Passages();
+        List<SparseVector> termCounts = new ArrayList<>();
+        for (TokenizedBatch batch : batches) {
+            passages.addAll(batch.passages(), documents.size());
+            documents.addAll(batch.documents());
+            termCounts.addAll(batch.remap(dictionary));
+        }
+        if (!documents.isEmpty()) {
+            append(documents, passages, termCounts);
+        }
+    }
+
+    /**
+     * Splitter of documents into the passages indexed by this store
+     */
+    public PassageSplitter passageSplitter() {
+        return passageSplitter;
+    }
+
+    /**
+     * Append documents, their passages and the raw term counts of the passages, over the current
+     * dictionary, as a new segment and publish the resulting snapshot. Called with the lock held.
+     */
+    private void append(List<Document> documents, Passages passages, List<SparseVector> termCounts) {
+        IndexSnapshot current = snapshot;
+        append(new ArrayList<>(current.segments()), current.documentFrequency(), documents, passages, termCounts);
+    }
+
+    /**
+     * Same as {@link #append(List, Passages, List)}, over the given segments and document
+     * frequencies rather than those of the current snapshot; the segments list is modified
+     */
+    private void append(List<Segment> segments, int[] baseFrequency,
+                        List<Document> documents, Passages passages, List<SparseVector> termCounts) {
+        // Copy-on-write document frequencies, extended to the terms added by this batch
+        int[] documentFrequency = Arrays.copyOf(baseFrequency, dictionary.size());
+        for (SparseVector vector : termCounts) {
+            for (int i = 0; i < vector.size(); i++) {
+                documentFrequency[vector.termId(i)]++;
+            }
+        }
+
+        if (!documents.isEmpty()) {
+            segments.add(Segment.build(documents, passages, termCounts, arenaFactory.get()));
+            mergeTailSegments(segments);
+        }
+
+        snapshot = IndexSnapshot.of(snapshot.version() + 1, dictionary, segments, documentFrequency, bm25);
+
+        log.debug("Added {} documents to vector store, as {} passages", documents.size(), passages.size());
+    }
+
+    /**
+     * Search for similar documents using cosine similarity, or BM25 if configured.
+     * Only passages sharing at least one term with the query are scored, and the best
+     * passage of each of the best topK documents is kept in a bounded min-heap.
+     * Returns these passages, best first.
+     */
+    public List<Passage> search(String query, int topK) {
+        return search(query, topK, new QueryTimings());
+    }
+
+    /**
+     * Same as {@link #search(String, int)}, adding the time spent in each stage to the timings
      */
-    public List<Document> search(String query, int topK) {
-        if (documents.isEmpty()) {
+    public List<Passage> search(String query, int topK, QueryTimings timings) {
+        return search(query, null, topK, timings);
+    }
+
+    /**
+     * Same as {@link #search(String, int, QueryTimings)}, with the terms of the query returned by
+     * {@link #queryTerms(String)}, or null. The query is only tokenized again if the index
+     * changed since its terms were computed.
+     */
+    public List<Passage> search(String query, QueryTerms terms, int topK, QueryTimings timings) {
+        IndexSnapshot current = snapshot;
+        if (current.livePassages() == 0 || topK <= 0) {
             return Collections.emptyList();
         }
 
         // Create query vector
-        Map<String, Double> queryVector = createTfidfVector(query);
+        long start = System.nanoTime();
+        SparseVector queryVector = createQueryVector(queryTerms(query, terms, current), current);
+        long tokenized = System.nanoTime();
+        timings.add(Stage.TOKENIZE, tokenized - start);
+        if (queryVector.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<PriorityQueue<PassageScore>> shardHeaps = scatter(current, timings,
+                (from, to, shardTimings) -> searchShard(queryVector, current, from, to, topK, shardTimings));
+
+        long drainStart = System.nanoTime();
+        List<Passage> results = drain(merge(shardHeaps, topK));
+        timings.add(Stage.TOP_K, System.nanoTime() - drainStart);
+        return results;
+    }
+
+    /**
+     * Search the passages of global ordinals {@code [from, to)}, segment by segment
+     */
+    private PriorityQueue<PassageScore> searchShard(SparseVector queryVector, IndexSnapshot index,
+                                                    int from, int to, int topK, QueryTimings timings) {
+        if (index.bm25() != null) {
+            return searchShardBm25(queryVector, index, from, to, topK, timings);
+        }
+        TopKCollector collector = new TopKCollector(topK);
+        List<Segment> segments = index.segments();
+        long collectNanos = 0;
+        long scoreNanos = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            int base = index.segmentBase(s);
+            int first = Math.max(from, base) - base;
+            int end = Math.min(to, base + segment.size()) - base;
+            if (first >= end) {
+                continue;
+            }
+
+            // Collect candidates from the postings of the query terms
+            long segmentStart = System.nanoTime();
+            BitSet candidates = new BitSet(end - first);
+            for (int i = 0; i < queryVector.size(); i++) {
+                segment.collectPostings(queryVector.termId(i), first, end, candidates);
+            }
+            long collected = System.nanoTime();
+            collector.startSegment(index, s);
+            scoreCandidates(queryVector, index, s, first, candidates, collector);
+            collectNanos += collected - segmentStart;
+            scoreNanos += System.nanoTime() - collected;
+        }
+        timings.add(Stage.CANDIDATES, collectNanos);
+        timings.add(Stage.SCORING, scoreNanos);
+        return collector.finish();
+    }
+
+    /**
+     * Search the passages of global ordinals {@code [from, to)} with BM25, segment by segment.
+     * Postings are scored as they are read, so the whole search counts as scoring.
+     */
+    private PriorityQueue<PassageScore> searchShardBm25(SparseVector queryVector, IndexSnapshot index,
+                                                        int from, int to, int topK, QueryTimings timings) {
+        long start = System.nanoTime();
+        TopKCollector collector = new TopKCollector(topK);
+        List<Segment> segments = index.segments();
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            int base = index.segmentBase(s);
+            int first = Math.max(from, base) - base;
+            int end = Math.min(to, base + segment.size()) - base;
+            if (first < end) {
+                collector.startSegment(index, s);
+                index.bm25().search(s, segment, first, end, queryVector, collector);
+            }
+        }
+        timings.add(Stage.SCORING, System.nanoTime() - start);
+        return collector.finish();
+    }
+
+    /**
+     * Search for several queries at once, against the same index snapshot. The postings of
+     * a term are read once for all the queries containing it; results are returned in the
+     * order of the queries, each as {@link #search(String, int)} would return it. With BM25,
+     * whose pruning depends on each query's own top K, queries are searched one after the other.
+     */
+    public List<List<Passage>> searchAll(List<String> queries, int topK) {
+        return searchAll(queries, topK, new QueryTimings());
+    }
+
+    /**
+     * Same as {@link #searchAll(List, int)}, adding the time spent in each stage by the
+     * whole batch to the timings
+     */
+    public List<List<Passage>> searchAll(List<String> queries, int topK, QueryTimings timings) {
+        return searchAll(queries, null, topK, timings);
+    }
+
+    /**
+     * Same as {@link #searchAll(List, int, QueryTimings)}, with the terms of each query returned
+     * by {@link #queryTerms(String)}, in the same order, or null. Queries are only tokenized again
+     * if the index changed since their terms were computed.
+     */
+    public List<List<Passage>> searchAll(List<String> queries, List<QueryTerms> terms, int topK,
+                                         QueryTimings timings) {
+        IndexSnapshot current = snapshot;
+        List<List<Passage>> results = new ArrayList<>(queries.size());
+        if (current.livePassages() == 0 || topK <= 0) {
+            queries.forEach(query -> results.add(Collections.emptyList()));
+            return results;
+        }
+
+        // Queries containing each term, by increasing term id
+        long start = System.nanoTime();
+        SparseVector[] queryVectors = new SparseVector[queries.size()];
+        SortedMap<Integer, List<Integer>> queriesByTerm = new TreeMap<>();
+        for (int q = 0; q < queryVectors.length; q++) {
+            QueryTerms queryTerms = queryTerms(queries.get(q), terms != null ? terms.get(q) : null, current);
+            queryVectors[q] = createQueryVector(queryTerms, current);
+            for (int i = 0; i < queryVectors[q].size(); i++) {
+                queriesByTerm.computeIfAbsent(queryVectors[q].termId(i), termId -> new ArrayList<>()).add(q);
+            }
+        }
+
+        timings.add(Stage.TOKENIZE, System.nanoTime() - start);
+
+        ShardSearch<List<PriorityQueue<PassageScore>>> shardSearch = current.bm25() != null
+                ? (from, to, shardTimings) -> {
+                    List<PriorityQueue<PassageScore>> heaps = new ArrayList<>(queryVectors.length);
+                    for (SparseVector queryVector : queryVectors) {
+                        heaps.add(searchShardBm25(queryVector, current, from, to, topK, shardTimings));
+                    }
+                    return heaps;
+                }
+                : (from, to, shardTimings) -> searchAllShard(queryVectors, queriesByTerm, current, from, to, topK,
+                        shardTimings);
+        List<List<PriorityQueue<PassageScore>>> shardHeaps = scatter(current, timings, shardSearch);
+
+        long drainStart = System.nanoTime();
+        for (int q = 0; q < queryVectors.length; q++) {
+            List<PriorityQueue<PassageScore>> heaps = new ArrayList<>(shardHeaps.size());
+            for (List<PriorityQueue<PassageScore>> shard : shardHeaps) {
+                heaps.add(shard.get(q));
+            }
+            results.add(drain(merge(heaps, topK)));
+        }
+        timings.add(Stage.TOP_K, System.nanoTime() - drainStart);
+        return results;
+    }
+
+    /**
+     * Search the passages of global ordinals {@code [from, to)} for all the queries,
+     * returning a heap per query
+     */
+    private List<PriorityQueue<PassageScore>> searchAllShard(SparseVector[] queryVectors,
+                                                             SortedMap<Integer, List<Integer>> queriesByTerm,
+                                                             IndexSnapshot index, int from, int to, int topK,
+                                                             QueryTimings timings) {
+        TopKCollector[] collectors = new TopKCollector[queryVectors.length];
+        for (int q = 0; q < queryVectors.length; q++) {
+            collectors[q] = new TopKCollector(topK);
+        }
+
+        List<Segment> segments = index.segments();
+        long collectNanos = 0;
+        long scoreNanos = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            int base = index.segmentBase(s);
+            int first = Math.max(from, base) - base;
+            int end = Math.min(to, base + segment.size()) - base;
+            if (first >= end) {
+                continue;
+            }
+
+            long segmentStart = System.nanoTime();
+            BitSet[] candidates = new BitSet[queryVectors.length];
+            BitSet postings = new BitSet(end - first);
+            for (Map.Entry<Integer, List<Integer>> entry : queriesByTerm.entrySet()) {
+                postings.clear();
+                segment.collectPostings(entry.getKey(), first, end, postings);
+                if (postings.isEmpty()) {
+                    continue;
+                }
+                for (int q : entry.getValue()) {
+                    if (candidates[q] == null) {
+                        candidates[q] = new BitSet(end - first);
+                    }
+                    candidates[q].or(postings);
+                }
+            }
+
+            long collected = System.nanoTime();
+            for (int q = 0; q < queryVectors.length; q++) {
+                if (candidates[q] != null) {
+                    collectors[q].startSegment(index, s);
+                    scoreCandidates(queryVectors[q], index, s, first, candidates[q], collectors[q]);
+                }
+            }
+            collectNanos += collected - segmentStart;
+            scoreNanos += System.nanoTime() - collected;
+        }
+        timings.add(Stage.CANDIDATES, collectNanos);
+        timings.add(Stage.SCORING, scoreNanos);
+
+        List<PriorityQueue<PassageScore>> heaps = new ArrayList<>(queryVectors.length);
+        for (TopKCollector collector : collectors) {
+            heaps.add(collector.finish());
+        }
+        return heaps;
+    }
+
+    /**
+     * Run a search on each shard of the index and return the shard results in shard order.
+     *
+     * Shards are contiguous ranges of global ordinals, i.e. of passages in the order they were
+     * added, of equal size; the passages of a document may be split between two shards. All
+     * shards are searched against the same snapshot, so they share its dictionary and IDF
+     * weights, and their scores are comparable. Shards other than the first are searched on the
+     * search pool while the calling thread searches the first one. Small indexes are not split:
+     * each shard holds at least {@value #MIN_SHARD_PASSAGES} passages.
+     */
+    private <T> List<T> scatter(IndexSnapshot index, QueryTimings timings, ShardSearch<T> search) {
+        int total = index.totalPassages();
+        int shards = Math.min(shardCount, Math.max(1, total / MIN_SHARD_PASSAGES));
+        if (shards == 1) {
+            return List.of(search.search(0, total, timings));
+        }
+
+        QueryTimings[] shardTimings = new QueryTimings[shards];
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards - 1);
+        for (int shard = 1; shard < shards; shard++) {
+            int from = shardStart(total, shards, shard);
+            int to = shardStart(total, shards, shard + 1);
+            QueryTimings shardTiming = shardTimings[shard] = new QueryTimings();
+            tasks.add(searchPool.submit(() -> search.search(from, to, shardTiming)));
+        }
+        shardTimings[0] = new QueryTimings();
+        List<T> results = new ArrayList<>(shards);
+        results.add(search.search(0, shardStart(total, shards, 1), shardTimings[0]));
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+
+        // Shards run concurrently, so each stage takes as long as its slowest shard
+        for (Stage stage : Stage.values()) {
+            long slowest = -1;
+            for (QueryTimings shardTiming : shardTimings) {
+                if (shardTiming.recorded(stage)) {
+                    slowest = Math.max(slowest, shardTiming.nanos(stage));
+                }
+            }
+            if (slowest >= 0) {
+                timings.add(stage, slowest);
+            }
+        }
+        return results;
+    }
+
+    private static int shardStart(int total, int shards, int shard) {
+        return (int) ((long) total * shard / shards);
+    }
+
+    /**
+     * Merge the top K of each shard into the global top K. A document whose passages were
+     * split between two shards may be in the top K of both: only its best passage is kept.
+     */
+    private static PriorityQueue<PassageScore> merge(List<PriorityQueue<PassageScore>> heaps, int topK) {
+        if (heaps.size() == 1) {
+            return heaps.get(0);
+        }
+        List<PassageScore> all = new ArrayList<>();
+        heaps.forEach(all::addAll);
+        all.sort(PassageScore.WORST_FIRST.reversed());
+
+        PriorityQueue<PassageScore> merged = new PriorityQueue<>(topK + 1, PassageScore.WORST_FIRST);
+        Set<Integer> documents = new HashSet<>();
+        for (PassageScore score : all) {
+            if (merged.size() == topK) {
+                break;
+            }
+            if (documents.add(score.getDocument())) {
+                merged.offer(score);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Search the documents added with an embedding for the topK most similar to a query
+     * embedding, by cosine similarity. The dense index may be approximate.
+     */
+    public List<Document> searchByVector(float[] queryEmbedding, int topK) {
+        DenseIndex dense = denseIndex;
+        if (dense == null || topK <= 0) {
+            return Collections.emptyList();
+        }
+        return dense.search(queryEmbedding, topK);
+    }
+
+    /**
+     * Number of passages of the index and passage frequency of each of the terms it contains,
+     * for a cluster coordinator to sum over all the nodes
+     */
+    public TermStatistics termStatistics(Collection<String> terms) {
+        IndexSnapshot current = snapshot;
+        Map<String, Long> documentFrequencies = new HashMap<>();
+        for (String term : terms) {
+            int termId = current.termId(term);
+            if (termId >= 0) {
+                documentFrequencies.put(term, (long) current.documentFrequency()[termId]);
+            }
+        }
+        return TermStatistics.builder()
+                .documents(current.livePassages())
+                .documentFrequencies(documentFrequencies)
+                .build();
+    }
+
+    /**
+     * Search with the query weighted by the term statistics of a whole cluster rather than of
+     * this index alone, so that the scores returned by different nodes can be merged. Documents
+     * are still normalized with the IDF weights, or BM25 average length, of this index.
+     * Returns the best passage of each of the topK documents, best first.
+     */
+    public List<ScoredDocument> search(String query, int topK, TermStatistics statistics) {
+        IndexSnapshot current = snapshot;
+        if (current.livePassages() == 0 || topK <= 0) {
+            return Collections.emptyList();
+        }
+        SparseVector queryVector = createQueryVector(query, current, statistics);
+        if (queryVector.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        PriorityQueue<PassageScore> heap = merge(scatter(current, new QueryTimings(),
+                (from, to, shardTimings) -> searchShard(queryVector, current, from, to, topK, shardTimings)), topK);
+        List<ScoredDocument> results = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            PassageScore score = heap.poll();
+            Passage passage = score.getPassage();
+            results.add(ScoredDocument.builder()
+                    .score(score.getScore())
+                    .document(passage.getDocument())
+                    .passageStart(passage.getStart())
+                    .passageEnd(passage.getEnd())
+                    .build());
+        }
+        Collections.reverse(results);
+        return results;
+    }
 
-        // Calculate cosine similarity with all documents
-        List<DocumentScore> scores = new ArrayList<>();
-        for (Document doc : documents) {
-            double similarity = cosineSimilarity(queryVector, tfidfVectors.get(doc.getId()));
-            scores.add(new DocumentScore(doc, similarity));
+    /**
+     * Score the candidates of a segment, given as bits relative to local ordinal {@code first},
+     * in increasing ordinal order, skipping the passages of deleted documents
+     */
+    private void scoreCandidates(SparseVector queryVector, IndexSnapshot index, int s, int first, BitSet candidates,
+                                 TopKCollector collector) {
+        Segment segment = index.segments().get(s);
+        float[] scales = index.documentScales(s);
+        for (int bit = candidates.nextSetBit(0); bit >= 0; bit = candidates.nextSetBit(bit + 1)) {
+            int ordinal = first + bit;
+            if (segment.isDeleted(ordinal)) {
+                continue;
+            }
+            collector.collect(ordinal, cosineSimilarity(queryVector, segment, scales, ordinal));
         }
+    }
 
-        // Sort by similarity and return top K
-        return scores.stream()
-                .sorted(Comparator.comparingDouble(DocumentScore::getScore).reversed())
-                .limit(topK)
-                .map(DocumentScore::getDocument)
-                .collect(Collectors.toList());
+    /**
+     * Drain the heap from worst to best, then reverse
+     */
+    private static List<Passage> drain(PriorityQueue<PassageScore> heap) {
+        List<Passage> results = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            results.add(heap.poll().getPassage());
+        }
+        Collections.reverse(results);
+        return results;
     }
 
     /**
      * Get all documents in the store
      */
     public List<Document> getAllDocuments() {
-        return new ArrayList<>(documents);
+        return snapshot.documents();
     }
 
     /**
-     * Clear all documents from the store
+     * Version of the index, incremented by every change to the documents or their embeddings
+     */
+    public long version() {
+        return snapshot.version();
+    }
+
+    /**
+     * Number of documents in the store
+     */
+    public int size() {
+        return snapshot.liveDocuments();
+    }
+
+    /**
+     * Number of distinct terms in the index
      */
-    public void clear() {
-        documents.clear();
-        tfidfVectors.clear();
-        documentFrequency.clear();
-        totalDocuments = 0;
+    public int termCount() {
+        return snapshot.documentFrequency().length;
     }
 
     /**
-     * Recompute TF-IDF vectors for all documents
+     * Bytes used by the document vectors of all segments, on or off heap depending on the arena
      */
-    private void recomputeTfidfVectors() {
-        tfidfVectors.clear();
-        for (Document doc : documents) {
-            tfidfVectors.put(doc.getId(), createTfidfVector(doc.getContent()));
+    public long vectorBytes() {
+        long bytes = 0;
+        for (Segment segment : snapshot.segments()) {
+            bytes += segment.vectors().bytesUsed();
+        }
+        DenseIndex dense = denseIndex;
+        if (dense != null) {
+            bytes += dense.index.bytesUsed();
         }
+        return bytes;
     }
 
     /**
-     * Create TF-IDF vector for text
+     * Number of passages the documents of the store are split into
      */
-    private Map<String, Double> createTfidfVector(String text) {
-        Map<String, Double> vector = new HashMap<>();
-        List<String> terms = extractTermsList(text);
-        
-        if (terms.isEmpty()) {
-            return vector;
+    public int passageCount() {
+        return snapshot.livePassages();
+    }
+
+    /**
+     * Write the live documents of the current index to a segment file, tagged with a checksum
+     * of its sources. Segments holding deleted documents are written rebuilt without them, with
+     * weights computed over the live documents; the store itself is left as it is.
+     */
+    public synchronized void save(Path path, String sourceChecksum) throws IOException {
+        IndexSnapshot current = snapshot;
+        IndexSnapshot saved = current;
+        if (current.liveDocuments() != current.totalDocuments()) {
+            List<Segment> segments = new ArrayList<>(current.segments().size());
+            for (Segment segment : current.segments()) {
+                Segment live = segment.deletedDocumentCount() > 0
+                    ? segment.withoutDocuments(new BitSet(), arenaFactory.get())
+                    : segment;
+                if (live != null) {
+                    segments.add(live);
+                }
+            }
+            saved = IndexSnapshot.of(current.version(), dictionary, segments, current.documentFrequency(), bm25);
         }
+        SegmentFile.write(path, saved, sourceChecksum);
+        log.debug("Saved index of {} documents to {}", saved.liveDocuments(), path);
+    }
 
-        // Calculate term frequency (TF)
-        Map<String, Integer> termCounts = new HashMap<>();
-        for (String term : terms) {
-            termCounts.merge(term, 1, Integer::sum);
+    /**
+     * Replace the content of the store with a segment file, memory-mapped in place.
+     * Returns false, leaving the store unchanged, if the file is missing or was built from other sources.
+     */
+    public synchronized boolean load(Path path, String sourceChecksum) throws IOException {
+        IndexSnapshot loaded = SegmentFile.read(path, sourceChecksum);
+        if (loaded == null) {
+            return false;
         }
+        dictionary = loaded.dictionary();
+        IndexSnapshot restored = loaded.withVersion(snapshot.version() + 1);
+        snapshot = bm25 != null ? restored.withBm25(bm25) : restored;
+        denseIndex = null;
+        return true;
+    }
 
-        // Calculate TF-IDF for each term
-        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
-            String term = entry.getKey();
-            int count = entry.getValue();
-            
-            double tf = (double) count / terms.size();
-            double idf = Math.log((double) (totalDocuments + 1) / 
-                                 (documentFrequency.getOrDefault(term, 0) + 1));
-            double tfidf = tf * idf;
-            
-            vector.put(term, tfidf);
+    /**
+     * Clear all documents from the store
+     */
+    public synchronized void clear() {
+        // Searches still running on the previous snapshot keep using the previous dictionary
+        dictionary = new TermDictionary();
+        snapshot = IndexSnapshot.empty(snapshot.version() + 1, dictionary);
+        denseIndex = null;
+    }
+
+    /**
+     * Split a document into passages, added with the given document index, and tokenize each
+     * passage into its raw term count vector, in place in the document content
+     */
+    private void vectorize(int documentIndex, Document document, Passages passages, List<SparseVector> termCounts,
+                           TermCounter counter) {
+        int first = passages.size();
+        String content = document.getContent();
+        passageSplitter.split(documentIndex, content, passages);
+        for (int p = first; p < passages.size(); p++) {
+            Tokenizer.tokenize(content, passages.start(p), passages.end(p),
+                    (buffer, length) -> counter.add(dictionary.getOrAdd(buffer, length)));
+            termCounts.add(counter.toVector());
+        }
+    }
+
+    /**
+     * Keep the number of segments logarithmic in the number of documents: merge the last
+     * segment into its predecessor for as long as the predecessor is not larger than it
+     */
+    private void mergeTailSegments(List<Segment> segments) {
+        while (segments.size() > 1) {
+            int last = segments.size() - 1;
+            if (segments.get(last - 1).size() > segments.get(last).size()) {
+                return;
+            }
+            Segment merged = Segment.merge(List.of(segments.get(last - 1), segments.get(last)), arenaFactory);
+            segments.remove(last);
+            segments.set(last - 1, merged);
+        }
+    }
+
+    /**
+     * Merge each segment into its predecessor, recursively, when the predecessor is not larger,
+     * as {@link #mergeTailSegments} does for the last one
+     */
+    private void mergeSegments(List<Segment> segments) {
+        int s = 1;
+        while (s < segments.size()) {
+            if (segments.get(s - 1).size() > segments.get(s).size()) {
+                s++;
+                continue;
+            }
+            segments.set(s - 1, Segment.merge(List.of(segments.get(s - 1), segments.get(s)), arenaFactory));
+            segments.remove(s);
+            s = Math.max(1, s - 1);
         }
+    }
+
+    /**
+     * Compute the weights of the current index now, so that the next search does not have to
+     */
+    public void weigh() {
+        snapshot.weigh();
+    }
+
+    /**
+     * Tokenize a query against the current index. Queries with equal terms get the same results.
+     */
+    public QueryTerms queryTerms(String query) {
+        return queryTerms(query, snapshot);
+    }
 
-        return normalizeVector(vector);
+    /**
+     * Terms of a query on an index: those given if computed on that index version, otherwise
+     * tokenized again
+     */
+    private QueryTerms queryTerms(String text, QueryTerms terms, IndexSnapshot index) {
+        return terms != null && terms.version() == index.version() ? terms : queryTerms(text, index);
+    }
+
+    private QueryTerms queryTerms(String text, IndexSnapshot index) {
+        TermCounter counter = new TermCounter(16);
+        Map<String, Integer> unknownTerms = new HashMap<>();
+        int totalTerms = Tokenizer.tokenize(text, (buffer, length) -> {
+            int termId = index.termId(buffer, length);
+            if (termId >= 0) {
+                counter.add(termId);
+            } else {
+                unknownTerms.merge(new String(buffer, 0, length), 1, Integer::sum);
+            }
+        });
+
+        long unknownTermSquares = 0;
+        for (int count : unknownTerms.values()) {
+            unknownTermSquares += (long) count * count;
+        }
+        return QueryTerms.of(index.version(), counter.toVector(), totalTerms, unknownTermSquares);
     }
 
     /**
-     * Normalize vector to unit length
+     * Create the normalized TF-IDF vector of a query, pre-multiplied by the IDF of each term
+     * so that its dot product with a raw count vector only needs the document scale factor.
+     * The terms must have been computed on the same index version.
      */
-    private Map<String, Double> normalizeVector(Map<String, Double> vector) {
-        double magnitude = Math.sqrt(
-            vector.values().stream()
-                  .mapToDouble(v -> v * v)
-                  .sum()
-        );
+    private SparseVector createQueryVector(QueryTerms terms, IndexSnapshot index) {
+        int totalTerms = terms.totalTerms();
+        if (totalTerms == 0) {
+            return SparseVector.EMPTY;
+        }
+        if (index.bm25() != null) {
+            return createBm25QueryVector(terms, index.bm25());
+        }
+
+        int length = terms.size();
+        int[] termIds = new int[length];
+        float[] weights = new float[length];
+        double squaredNorm = 0.0;
 
-        if (magnitude == 0) {
-            return vector;
+        // Calculate TF-IDF for each term
+        for (int i = 0; i < length; i++) {
+            int termId = terms.termId(i);
+            double termIdf = index.idf(termId);
+            double tfidf = (double) terms.count(i) / totalTerms * termIdf;
+            squaredNorm += tfidf * tfidf;
+
+            termIds[i] = termId;
+            weights[i] = (float) (tfidf * termIdf);
         }
 
-        Map<String, Double> normalized = new HashMap<>();
-        for (Map.Entry<String, Double> entry : vector.entrySet()) {
-            normalized.put(entry.getKey(), entry.getValue() / magnitude);
+        // Unknown terms match no document but still count in the query norm
+        double unknownWeight = index.unknownTermIdf() / totalTerms;
+        squaredNorm += terms.unknownTermSquares() * unknownWeight * unknownWeight;
+
+        // Normalize vector to unit length
+        if (squaredNorm > 0) {
+            float inverseNorm = (float) (1.0 / Math.sqrt(squaredNorm));
+            for (int i = 0; i < length; i++) {
+                weights[i] *= inverseNorm;
+            }
         }
-        return normalized;
+
+        return SparseVector.sorted(termIds, weights, length);
     }
 
     /**
-     * Calculate cosine similarity between two vectors
+     * Create the BM25 query vector: the IDF of each known term times its count in the query.
+     * Unknown terms match no document and add nothing to any score.
      */
-    private double cosineSimilarity(Map<String, Double> v1, Map<String, Double> v2) {
-        if (v1 == null || v2 == null || v1.isEmpty() || v2.isEmpty()) {
-            return 0.0;
+    private static SparseVector createBm25QueryVector(QueryTerms terms, Bm25Weights weights) {
+        int length = terms.size();
+        int[] termIds = new int[length];
+        float[] weightsByTerm = new float[length];
+        for (int i = 0; i < length; i++) {
+            termIds[i] = terms.termId(i);
+            weightsByTerm[i] = terms.count(i) * weights.idf(terms.termId(i));
+        }
+        return SparseVector.sorted(termIds, weightsByTerm, length);
+    }
+
+    /**
+     * Create the normalized query vector as {@link #createQueryVector(QueryTerms, IndexSnapshot)} does,
+     * with the IDF of each term taken from the statistics of a cluster. Terms that no local
+     * document contains count in the norm only.
+     */
+    private SparseVector createQueryVector(String text, IndexSnapshot index, TermStatistics statistics) {
+        Map<String, Integer> counts = new HashMap<>();
+        int totalTerms = Tokenizer.tokenize(text,
+                (buffer, length) -> counts.merge(new String(buffer, 0, length), 1, Integer::sum));
+        if (totalTerms == 0) {
+            return SparseVector.EMPTY;
+        }
+        if (index.bm25() != null) {
+            return createBm25QueryVector(counts, index, statistics);
         }
 
-        double dotProduct = 0.0;
-        for (Map.Entry<String, Double> entry : v1.entrySet()) {
-            String term = entry.getKey();
-            if (v2.containsKey(term)) {
-                dotProduct += entry.getValue() * v2.get(term);
+        int[] termIds = new int[counts.size()];
+        float[] weights = new float[counts.size()];
+        int length = 0;
+        double squaredNorm = 0.0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            double termIdf = statistics.idf(entry.getKey());
+            double tfidf = (double) entry.getValue() / totalTerms * termIdf;
+            squaredNorm += tfidf * tfidf;
+
+            int termId = index.termId(entry.getKey());
+            if (termId >= 0) {
+                termIds[length] = termId;
+                weights[length++] = (float) (tfidf * termIdf);
             }
         }
 
-        return dotProduct; // Vectors are already normalized
+        if (squaredNorm > 0) {
+            float inverseNorm = (float) (1.0 / Math.sqrt(squaredNorm));
+            for (int i = 0; i < length; i++) {
+                weights[i] *= inverseNorm;
+            }
+        }
+        return SparseVector.sorted(termIds, weights, length);
     }
 
     /**
-     * Extract terms from text (tokenization + normalization)
+     * Create the BM25 query vector of the counted terms with their IDF taken from the statistics of a cluster
      */
-    private Set<String> extractTerms(String text) {
-        return new HashSet<>(extractTermsList(text));
+    private static SparseVector createBm25QueryVector(Map<String, Integer> counts, IndexSnapshot index,
+                                                      TermStatistics statistics) {
+        int[] termIds = new int[counts.size()];
+        float[] weights = new float[counts.size()];
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            int termId = index.termId(entry.getKey());
+            if (termId >= 0) {
+                termIds[length] = termId;
+                weights[length++] = (float) (entry.getValue() * Bm25.inverseDocumentFrequency(
+                        statistics.getDocuments(), statistics.getDocumentFrequencies().getOrDefault(entry.getKey(), 0L)));
+            }
+        }
+        return SparseVector.sorted(termIds, weights, length);
     }
 
     /**
-     * Extract terms as list (for TF calculation)
+     * Calculate cosine similarity between the query and a stored passage,
+     * with a merge-style dot product over their sorted term ids
      */
-    private List<String> extractTermsList(String text) {
-        if (text == null || text.isEmpty()) {
-            return Collections.emptyList();
+    private static double cosineSimilarity(SparseVector queryVector, Segment segment, float[] scales, int ordinal) {
+        return segment.vectors().dot(ordinal, queryVector) * scales[ordinal];
+    }
+
+    /**
+     * Dense index and the document of each of its vector ids, replaced together on clear.
+     * The vector index cannot remove vectors: the ids of removed documents are masked instead.
+     * Vectors are found by document id rather than by document instance, since the documents
+     * of a mapped segment are decoded anew on each access.
+     */
+    private static final class DenseIndex {
+        final VectorIndex index;
+        // Indexed by vector id; set before the vector is added, so searches always find it
+        volatile Document[] documents = new Document[16];
+        // Ids of removed documents; copy-on-write
+        volatile BitSet removed = new BitSet();
+        // Vector ids of the live documents, by document id, for the writer
+        final Map<String, List<Integer>> ids = new HashMap<>();
+
+        DenseIndex(VectorIndex index) {
+            this.index = index;
+        }
+
+        // Called with the store lock held
+        void add(Document document, float[] embedding) {
+            int id = index.size();
+            Document[] current = documents;
+            if (id == current.length) {
+                current = Arrays.copyOf(current, id * 2);
+            }
+            current[id] = document;
+            documents = current;
+            ids.computeIfAbsent(document.getId(), key -> new ArrayList<>(1)).add(id);
+            index.add(embedding);
+        }
+
+        // Called with the store lock held
+        void remove(Collection<String> documentIds) {
+            BitSet next = (BitSet) removed.clone();
+            for (String documentId : documentIds) {
+                List<Integer> vectorIds = ids.remove(documentId);
+                if (vectorIds != null) {
+                    vectorIds.forEach(next::set);
+                }
+            }
+            removed = next;
+        }
+
+        List<Document> search(float[] queryEmbedding, int topK) {
+            // Enough neighbors to fill the top K even if the nearest ones were all removed
+            BitSet masked = removed;
+            Neighbors neighbors = index.search(queryEmbedding, topK + masked.cardinality());
+            Document[] current = documents;
+            List<Document> results = new ArrayList<>(Math.min(topK, neighbors.size()));
+            for (int i = 0; i < neighbors.size() && results.size() < topK; i++) {
+                if (!masked.get(neighbors.id(i))) {
+                    results.add(current[neighbors.id(i)]);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Keeps the best passage of each of the top K documents, from the passages scored segment
+     * after segment in increasing ordinal order, with the worst of them at the head of the heap.
+     *
+     * The passages of a document are consecutive, so the best one seen so far is held back
+     * until the scan moves on to another document, and only then offered to the heap. Documents
+     * also come in increasing order, so one that only ties the head is worse than it.
+     */
+    private static final class TopKCollector implements ScoreCollector {
+        private final PriorityQueue<PassageScore> heap;
+        private final int topK;
+        private Segment segment;
+        private int passageBase;
+        private int documentBase;
+        // Best passage of the document being scanned, or -1
+        private int pendingOrdinal = -1;
+        private double pendingScore;
+
+        TopKCollector(int topK) {
+            this.heap = new PriorityQueue<>(topK + 1, PassageScore.WORST_FIRST);
+            this.topK = topK;
+        }
+
+        void startSegment(IndexSnapshot index, int s) {
+            flush();
+            segment = index.segments().get(s);
+            passageBase = index.segmentBase(s);
+            documentBase = index.documentBase(s);
+        }
+
+        @Override
+        public double threshold() {
+            return heap.size() == topK ? heap.peek().getScore() : Double.NEGATIVE_INFINITY;
+        }
+
+        @Override
+        public void collect(int ordinal, double score) {
+            if (pendingOrdinal >= 0 && segment.documentIndex(pendingOrdinal) == segment.documentIndex(ordinal)) {
+                if (score > pendingScore) {
+                    pendingOrdinal = ordinal;
+                    pendingScore = score;
+                }
+                return;
+            }
+            flush();
+            pendingOrdinal = ordinal;
+            pendingScore = score;
         }
 
-        return Arrays.stream(text.toLowerCase()
-                        .replaceAll("[^a-z0-9\\s]", " ")
-                        .split("\\s+"))
-                .filter(term -> term.length() > 2) // Remove short terms
-                .filter(term -> !STOP_WORDS.contains(term)) // Remove stop words
-                .collect(Collectors.toList());
+        PriorityQueue<PassageScore> finish() {
+            flush();
+            return heap;
+        }
+
+        private void flush() {
+            if (pendingOrdinal < 0) {
+                return;
+            }
+            int ordinal = pendingOrdinal;
+            pendingOrdinal = -1;
+            if (heap.size() == topK) {
+                if (pendingScore <= heap.peek().getScore()) {
+                    return;
+                }
+                heap.poll();
+            }
+            heap.offer(new PassageScore(segment.passage(ordinal), documentBase + segment.documentIndex(ordinal),
+                    passageBase + ordinal, pendingScore));
+        }
     }
 
     /**
-     * Common English stop words
+     * Search of the passages of global ordinals {@code [from, to)}
      */
-    private static final Set<String> STOP_WORDS = Set.of(
-        "the", "and", "for", "are", "but", "not", "you", "all", "can", "her", "was", 
-        "one", "our", "out", "day", "get", "has", "him", "his", "how", "its", "may",
-        "she", "who", "will", "with", "this", "that", "from", "have", "been", "they",
-        "what", "when", "your", "more", "into", "than", "some", "time", "very", "would"
-    );
+    @FunctionalInterface
+    private interface ShardSearch<T> {
+        T search(int from, int to, QueryTimings timings);
+    }
 
     /**
-     * Helper class to store document with similarity score
+     * Helper class to store a passage with its similarity score
      */
-    private static class DocumentScore {
-        private final Document document;
+    private static class PassageScore {
+        /**
+         * Orders the lowest score first; on equal scores the later-added passage is considered worse
+         */
+        static final Comparator<PassageScore> WORST_FIRST = Comparator
+                .comparingDouble(PassageScore::getScore)
+                .thenComparing(Comparator.comparingInt(PassageScore::getOrdinal).reversed());
+
+        private final Passage passage;
+        // Global index of the passage's document
+        private final int document;
+        private final int ordinal;
         private final double score;
 
-        public DocumentScore(Document document, double score) {
+        public PassageScore(Passage passage, int document, int ordinal, double score) {
+            this.passage = passage;
             this.document = document;
+            this.ordinal = ordinal;
             this.score = score;
         }
 
-        public Document getDocument() {
+        public Passage getPassage() {
+            return passage;
+        }
+
+        public int getDocument() {
             return document;
         }
 
+        public int getOrdinal() {
+            return ordinal;
+        }
+
         public double getScore() {
             return score;
         }
@@ -0,0 +1,133 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.Passages;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BM25 search with MaxScore pruning, and by passage, against scoring every passage in full
+ */
+class Bm25SearchTest {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int[] TOP_K = {1, 5, 20};
+
+    @Test
+    void topDocumentsMatchBruteForceScoring() {
+        TestCorpus corpus = new TestCorpus(42, 2000);
+        List<Document> documents = corpus.documents(1500, 20, 80);
+        SimpleVectorStore store = store(PassageSplitter.wholeDocuments());
+        addInBatches(store, documents);
+
+        BruteForceBm25 reference = new BruteForceBm25(documents.stream().map(Document::getContent).toList(), K1, B);
+        for (String query : corpus.queries(100)) {
+            double[] scores = new double[documents.size()];
+            for (int d = 0; d < documents.size(); d++) {
+                scores[d] = reference.score(query, d);
+            }
+            for (int topK : TOP_K) {
+                assertTopDocuments(query, topK, scores, store.search(query, topK));
+            }
+        }
+    }
+
+    @Test
+    void passagesMatchBruteForceScoring(@TempDir Path directory) throws Exception {
+        TestCorpus corpus = new TestCorpus(7, 2000);
+        List<Document> documents = corpus.documents(600, 20, 80);
+        PassageSplitter splitter = new PassageSplitter(8, 3);
+        SimpleVectorStore store = store(splitter);
+        addInBatches(store, documents);
+
+        Passages passages = new Passages();
+        for (int d = 0; d < documents.size(); d++) {
+            splitter.split(d, documents.get(d).getContent(), passages);
+        }
+        List<String> texts = new ArrayList<>(passages.size());
+        for (int p = 0; p < passages.size(); p++) {
+            texts.add(documents.get(passages.document(p)).getContent().substring(passages.start(p), passages.end(p)));
+        }
+        assertEquals(passages.size(), store.passageCount());
+        BruteForceBm25 reference = new BruteForceBm25(texts, K1, B);
+
+        List<String> queries = corpus.queries(100);
+        for (String query : queries) {
+            // A document scores as its best passage
+            double[] scores = new double[documents.size()];
+            for (int p = 0; p < passages.size(); p++) {
+                scores[passages.document(p)] = Math.max(scores[passages.document(p)], reference.score(query, p));
+            }
+            for (int topK : TOP_K) {
+                List<Passage> results = store.search(query, topK);
+                assertTopDocuments(query, topK, scores, results);
+                for (Passage passage : results) {
+                    assertEquals(scores[index(passage.getDocument())], reference.score(query, passage.text()),
+                            tolerance(scores[index(passage.getDocument())]), "best passage of " + query);
+                }
+            }
+        }
+
+        Path file = directory.resolve("index.seg");
+        store.save(file, "test");
+        SimpleVectorStore loaded = store(splitter);
+        assertTrue(loaded.load(file, "test"));
+        for (String query : queries) {
+            assertEquals(store.search(query, 5), loaded.search(query, 5), query);
+        }
+    }
+
+    private static void assertTopDocuments(String query, int topK, double[] scores, List<Passage> results) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        long matching = Arrays.stream(scores).filter(score -> score > 0).count();
+        assertEquals(Math.min(topK, matching), results.size(), query);
+
+        // Documents with equal scores may come in any order
+        Set<String> seen = new HashSet<>();
+        for (int rank = 0; rank < results.size(); rank++) {
+            Document document = results.get(rank).getDocument();
+            assertTrue(seen.add(document.getId()), "document returned twice for " + query);
+            double expected = sorted[sorted.length - 1 - rank];
+            assertEquals(expected, scores[index(document)], tolerance(expected), query + " at rank " + rank);
+        }
+    }
+
+    private static int index(Document document) {
+        return Integer.parseInt(document.getId().substring("doc-".length()));
+    }
+
+    private static double tolerance(double score) {
+        return 1e-4 * Math.max(1, score);
+    }
+
+    private static SimpleVectorStore store(PassageSplitter splitter) {
+        return new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, 1, new Bm25(K1, B), splitter);
+    }
+
+    /**
+     * Several batches, so that the index has several segments
+     */
+    static void addInBatches(SimpleVectorStore store, List<Document> documents) {
+        int batch = documents.size() / 3 + 1;
+        for (int i = 0; i < documents.size(); i += batch) {
+            store.addDocuments(documents.subList(i, Math.min(documents.size(), i + batch)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference BM25 scoring of every passage against the whole query, term by term, with the
+ * same IDF as the index: {@code log(1 + (N - df + 0.5) / (df + 0.5))} over passages
+ */
+final class BruteForceBm25 {
+
+    private final float k1;
+    private final float b;
+    private final List<Map<String, Integer>> termCounts = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+    private final double averageLength;
+
+    BruteForceBm25(List<? extends CharSequence> passages, float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+        long totalLength = 0;
+        for (CharSequence passage : passages) {
+            Map<String, Integer> counts = termCounts(passage);
+            int length = length(counts);
+            termCounts.add(counts);
+            lengths.add(length);
+            totalLength += length;
+            counts.keySet().forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+        }
+        this.averageLength = (double) totalLength / passages.size();
+    }
+
+    double score(String query, int passage) {
+        return score(termCounts(query), termCounts.get(passage), lengths.get(passage));
+    }
+
+    /**
+     * Score of any text, such as a returned passage, with the statistics of the corpus
+     */
+    double score(String query, CharSequence text) {
+        Map<String, Integer> counts = termCounts(text);
+        return score(termCounts(query), counts, length(counts));
+    }
+
+    private double score(Map<String, Integer> query, Map<String, Integer> counts, int length) {
+        int passages = termCounts.size();
+        double score = 0;
+        for (Map.Entry<String, Integer> term : query.entrySet()) {
+            Integer frequency = counts.get(term.getKey());
+            if (frequency == null) {
+                continue;
+            }
+            int df = documentFrequency.get(term.getKey());
+            double idf = Math.log(1 + (passages - df + 0.5) / (df + 0.5));
+            score += term.getValue() * idf * frequency * (k1 + 1)
+                    / (frequency + k1 * (1 - b + b * length / averageLength));
+        }
+        return score;
+    }
+
+    static Map<String, Integer> termCounts(CharSequence text) {
+        Map<String, Integer> counts = new HashMap<>();
+        Tokenizer.tokenize(text, (buffer, length) -> counts.merge(new String(buffer, 0, length), 1, Integer::sum));
+        return counts;
+    }
+
+    private static int length(Map<String, Integer> counts) {
+        return counts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+}
@@ -0,0 +1,46 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.QueryTerms;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Document;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Searching with the terms computed for the query cache gives the results of searching the text
+ */
+class QueryTermsSearchTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void searchWithPrecomputedTermsMatchesSearchWithText(boolean useBm25) {
+        TestCorpus corpus = new TestCorpus(3, 1000);
+        List<Document> documents = corpus.documents(400, 20, 60);
+        SimpleVectorStore store = new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, 1,
+                useBm25 ? new Bm25(1.2f, 0.75f) : null, new PassageSplitter(8, 3));
+        store.addDocuments(documents.subList(0, 300));
+
+        List<String> queries = corpus.queries(50);
+        List<QueryTerms> terms = queries.stream().map(store::queryTerms).toList();
+        for (int q = 0; q < queries.size(); q++) {
+            assertEquals(store.search(queries.get(q), 5),
+                    store.search(queries.get(q), terms.get(q), 5, new QueryTimings()), queries.get(q));
+        }
+        assertEquals(store.searchAll(queries, 5), store.searchAll(queries, terms, 5, new QueryTimings()));
+
+        // Terms computed on a previous version are ignored: the query is tokenized again
+        store.addDocuments(documents.subList(300, 400));
+        for (int q = 0; q < queries.size(); q++) {
+            assertEquals(store.search(queries.get(q), 5),
+                    store.search(queries.get(q), terms.get(q), 5, new QueryTimings()), queries.get(q));
+        }
+        assertEquals(store.searchAll(queries, 5), store.searchAll(queries, terms, 5, new QueryTimings()));
+    }
+}
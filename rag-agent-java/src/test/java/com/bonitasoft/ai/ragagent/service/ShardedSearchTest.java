@@ -0,0 +1,54 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Searches split into shards return exactly what a single-threaded search returns
+ */
+class ShardedSearchTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shardedSearchMatchesSingleShard(boolean useBm25) {
+        TestCorpus corpus = new TestCorpus(42, 5000);
+        List<Document> documents = corpus.documents(3000, 30, 60);
+        Bm25 bm25 = useBm25 ? new Bm25(1.2f, 0.75f) : null;
+        PassageSplitter splitter = new PassageSplitter(8, 3);
+        SimpleVectorStore single = new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, 1, bm25, splitter);
+        SimpleVectorStore sharded = new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, 4, bm25, splitter);
+        Bm25SearchTest.addInBatches(single, documents);
+        Bm25SearchTest.addInBatches(sharded, documents);
+        // Otherwise the search is not split
+        assertTrue(sharded.passageCount() >= 2 * SimpleVectorStore.MIN_SHARD_PASSAGES);
+
+        try {
+            List<String> queries = corpus.queries(200);
+            for (String query : queries) {
+                for (int topK : new int[]{1, 5, 20}) {
+                    assertEquals(single.search(query, topK), sharded.search(query, topK), query);
+                }
+            }
+
+            List<String> batch = queries.subList(0, 50);
+            List<List<Passage>> results = sharded.searchAll(batch, 5);
+            assertEquals(single.searchAll(batch, 5), results);
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(sharded.search(batch.get(i), 5), results.get(i), batch.get(i));
+            }
+        } finally {
+            sharded.shutdown();
+        }
+    }
+}
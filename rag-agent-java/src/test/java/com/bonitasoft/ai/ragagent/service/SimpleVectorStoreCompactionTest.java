@@ -0,0 +1,131 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.Bm25;
+import com.bonitasoft.ai.ragagent.index.PassageSplitter;
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deleting and updating documents, then compacting, gives the index built from the remaining documents
+ */
+class SimpleVectorStoreCompactionTest {
+
+    private static final List<String> TERMS = List.of("baba", "caca", "the", "zzzz");
+
+    private final PassageSplitter splitter = new PassageSplitter(8, 3);
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void deleteAndCompactMatchesRebuild(boolean useBm25, @TempDir Path directory) throws Exception {
+        Bm25 bm25 = useBm25 ? new Bm25(1.2f, 0.75f) : null;
+        TestCorpus corpus = new TestCorpus(7, 2000);
+        List<Document> documents = corpus.documents(1200, 20, 80);
+        List<String> queries = corpus.queries(100);
+        SimpleVectorStore store = store(bm25);
+        Bm25SearchTest.addInBatches(store, documents);
+        // Weights computed before the deletes go stale
+        store.weigh();
+
+        List<String> deleted = new ArrayList<>();
+        List<Document> kept = new ArrayList<>();
+        Random random = new Random(1);
+        for (Document document : documents) {
+            if (random.nextInt(3) == 0) {
+                deleted.add(document.getId());
+            } else {
+                kept.add(document);
+            }
+        }
+        for (String id : deleted) {
+            assertTrue(store.deleteDocument(id), id);
+        }
+        assertFalse(store.deleteDocument(deleted.get(0)));
+
+        SimpleVectorStore rebuilt = store(bm25);
+        rebuilt.addDocuments(kept);
+        assertEquals(rebuilt.size(), store.size());
+        assertEquals(rebuilt.passageCount(), store.passageCount());
+        assertEquals(rebuilt.termStatistics(TERMS), store.termStatistics(TERMS));
+
+        // Below the ratio, compaction only replaces the stale weights
+        assertTrue(store.compact(0.9));
+        assertFalse(store.compact(0.9));
+        assertSameResults(rebuilt, store, queries);
+
+        Path file = directory.resolve("index.seg");
+        store.save(file, "test");
+        SimpleVectorStore loaded = store(bm25);
+        assertTrue(loaded.load(file, "test"));
+        // Only the live documents are written
+        assertEquals(kept, loaded.getAllDocuments());
+        assertSameResults(rebuilt, loaded, queries);
+
+        assertTrue(store.compact(0.2));
+        assertEquals(rebuilt.passageCount(), store.passageCount());
+        assertSameResults(rebuilt, store, queries);
+
+        // Updated documents go last, as if added after the others
+        List<Document> updated = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Document document = kept.get(i * 30);
+            updated.add(Document.builder()
+                    .id(document.getId())
+                    .title(document.getTitle())
+                    .content(document.getContent() + " baba caca extra words")
+                    .date(document.getDate())
+                    .version(document.getVersion())
+                    .category(document.getCategory())
+                    .build());
+        }
+        updated.forEach(store::updateDocument);
+        Set<String> updatedIds = new HashSet<>();
+        updated.forEach(document -> updatedIds.add(document.getId()));
+        List<Document> remaining = new ArrayList<>();
+        for (Document document : kept) {
+            if (!updatedIds.contains(document.getId())) {
+                remaining.add(document);
+            }
+        }
+        remaining.addAll(updated);
+        SimpleVectorStore rebuiltAfterUpdates = store(bm25);
+        rebuiltAfterUpdates.addDocuments(remaining);
+        assertEquals(rebuiltAfterUpdates.size(), store.size());
+        assertSameResults(rebuiltAfterUpdates, store, queries);
+
+        store.compact(0.0001);
+        assertEquals(remaining, store.getAllDocuments());
+        assertSameResults(rebuiltAfterUpdates, store, queries);
+    }
+
+    private static void assertSameResults(SimpleVectorStore expected, SimpleVectorStore actual, List<String> queries) {
+        for (String query : queries) {
+            assertEquals(keys(expected.search(query, 10)), keys(actual.search(query, 10)), query);
+        }
+    }
+
+    private static List<String> keys(List<Passage> passages) {
+        return passages.stream()
+                .map(passage -> passage.getDocument().getId() + "@" + passage.getStart() + "-" + passage.getEnd())
+                .toList();
+    }
+
+    private SimpleVectorStore store(Bm25 bm25) {
+        return new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat, 1, bm25, splitter);
+    }
+}
@@ -0,0 +1,65 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.index.VectorArena;
+import com.bonitasoft.ai.ragagent.index.VectorIndex;
+import com.bonitasoft.ai.ragagent.model.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimpleVectorStoreDeletionTest {
+
+    private static final Map<String, float[]> EMBEDDINGS = Map.of(
+            "a", new float[]{1, 0, 0, 0},
+            "b", new float[]{0, 1, 0, 0},
+            "c", new float[]{0.8f, 0.2f, 0, 0});
+
+    @Test
+    void deletedAndUpdatedDocumentsLeaveTheDenseIndexAfterReload(@TempDir Path directory) throws Exception {
+        SimpleVectorStore built = store();
+        built.addDocuments(List.of(document("a", "alpha"), document("b", "beta"), document("c", "gamma")));
+        Path file = directory.resolve("index.seg");
+        built.save(file, "test");
+
+        // As at a warm start: documents decoded from the mapped file, embedded, then deleted
+        SimpleVectorStore loaded = store();
+        assertTrue(loaded.load(file, "test"));
+        List<Document> documents = loaded.getAllDocuments();
+        loaded.addEmbeddings(documents, documents.stream().map(document -> EMBEDDINGS.get(document.getId())).toList());
+
+        assertTrue(loaded.deleteDocument("a"));
+        assertFalse(loaded.deleteDocument("a"));
+        assertEquals(List.of("c", "b"), ids(loaded.searchByVector(new float[]{1, 0, 0, 0}, 3)));
+
+        loaded.updateDocuments(List.of(document("c", "gamma again")), List.of(new float[]{0, 0, 1, 0}), List.of());
+        assertEquals(List.of("c", "b"), ids(loaded.searchByVector(new float[]{0, 0.1f, 1, 0}, 3)));
+        assertEquals(2, loaded.size());
+    }
+
+    private static SimpleVectorStore store() {
+        return new SimpleVectorStore(VectorArena::onHeap, VectorIndex::flat);
+    }
+
+    private static Document document(String id, String content) {
+        return Document.builder()
+                .id(id)
+                .title("Policy " + id)
+                .content(content)
+                .date(LocalDate.of(2024, 1, 1))
+                .version("1")
+                .category("general")
+                .build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
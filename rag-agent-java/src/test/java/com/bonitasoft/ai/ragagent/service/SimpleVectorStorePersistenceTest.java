@@ -0,0 +1,46 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+import com.bonitasoft.ai.ragagent.model.Passage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * An index saved to a segment file and loaded back gives the same documents and search results
+ */
+class SimpleVectorStorePersistenceTest {
+
+    @Test
+    void loadedIndexMatchesSavedIndex(@TempDir Path directory) throws Exception {
+        TestCorpus corpus = new TestCorpus(11, 2000);
+        List<Document> documents = corpus.documents(600, 20, 80);
+        List<String> queries = corpus.queries(100);
+        SimpleVectorStore store = new SimpleVectorStore();
+        // Several segments
+        for (int from = 0; from < documents.size(); from += 100) {
+            store.addDocuments(documents.subList(from, from + 100));
+        }
+
+        Path file = directory.resolve("index.seg");
+        store.save(file, "sources-1");
+
+        SimpleVectorStore loaded = new SimpleVectorStore();
+        assertFalse(loaded.load(file, "sources-2"));
+        assertTrue(loaded.load(file, "sources-1"));
+        assertEquals(documents, loaded.getAllDocuments());
+        for (String query : queries) {
+            assertEquals(ids(store.search(query, 10)), ids(loaded.search(query, 10)), query);
+        }
+    }
+
+    private static List<String> ids(List<Passage> passages) {
+        return passages.stream().map(passage -> passage.getDocument().getId()).toList();
+    }
+}
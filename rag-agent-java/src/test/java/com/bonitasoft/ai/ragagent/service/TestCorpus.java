@@ -0,0 +1,94 @@
+package com.bonitasoft.ai.ragagent.service;
+
+import com.bonitasoft.ai.ragagent.model.Document;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic corpus for tests: words drawn from a small vocabulary with a Zipf
+ * distribution, so that queries share terms with many documents, mixed with stop words
+ */
+final class TestCorpus {
+
+    private static final String[] STOP_WORDS = {"the", "and", "for", "with", "this", "that", "from", "what"};
+
+    private final Random random;
+    private final double[] cumulativeWeights;
+
+    TestCorpus(long seed, int vocabularySize) {
+        this.random = new Random(seed);
+        this.cumulativeWeights = new double[vocabularySize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulativeWeights[rank] = sum;
+        }
+    }
+
+    /**
+     * Documents of {@code minWords} to {@code maxWords} words, with ids doc-0, doc-1...
+     */
+    List<Document> documents(int count, int minWords, int maxWords) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(Document.builder()
+                    .id("doc-" + i)
+                    .title("Policy " + i)
+                    .content(text(minWords + random.nextInt(maxWords - minWords + 1)))
+                    .date(LocalDate.of(2020, 1, 1).plusDays(i % 1000))
+                    .version("v1")
+                    .category("category-" + i % 10)
+                    .build());
+        }
+        return documents;
+    }
+
+    /**
+     * Questions of 2 to 5 words
+     */
+    List<String> queries(int count) {
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queries.add("What is the " + text(2 + random.nextInt(4)) + "?");
+        }
+        return queries;
+    }
+
+    private String text(int words) {
+        StringBuilder text = new StringBuilder(words * 8);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(random.nextInt(12) == 0 ? ". " : " ");
+            }
+            text.append(random.nextInt(5) == 0 ? STOP_WORDS[random.nextInt(STOP_WORDS.length)] : word(sampleRank()));
+        }
+        return text.toString();
+    }
+
+    private int sampleRank() {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        return index >= 0 ? index : Math.min(-index - 1, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * Pronounceable pseudo-word for a vocabulary rank, at least four letters long
+     */
+    private static String word(int rank) {
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int n = rank;
+        do {
+            word.append(consonants.charAt(n % consonants.length()));
+            n /= consonants.length();
+            word.append(vowels.charAt(n % vowels.length()));
+            n /= vowels.length();
+        } while (n > 0 || word.length() < 4);
+        return word.toString();
+    }
+}